@@ -5,8 +5,10 @@ import java.io.DataInputStream;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.util.Random;
 import minesweeper.Square.boomException;
+import minesweeper.Minefield.Progress;
 
 /**
  * The Board class is thread safe. 
@@ -21,14 +23,16 @@ import minesweeper.Square.boomException;
  */
 
 
-public class Board {
+public class Board implements Minefield {
 	
 	/* field definitions:
 	 * field "squares" is a two dimensional array of instances of square
 	 * field "size" is an integer indicating the row and column numbers
+	 * field "rendering" is the buffer toString renders the board into
 	 */
     private final Square[][] squares;
     private final int size;
+    private byte[] rendering; // reused by toString, see there
 
     // constructor
     public Board(boolean[][] bombState) {
@@ -45,6 +49,21 @@ public class Board {
 
     }
 
+    // constructor based on a snapshot (see snapshot())
+    public Board(char[][] snapshot) {
+        this.size = snapshot.length;
+        this.squares = new Square[size][size];
+
+        for (int x = 0; x < size; x++) {
+            for (int y = 0; y < size; y++) {
+                squares[x][y] = new Square(snapshot[x][y]);
+            }
+        }
+
+        generateNeighborList();
+
+    }
+
     // constructor based on size
     public Board(int size) {
         final double bombProbability = 0.25;
@@ -145,62 +164,253 @@ public class Board {
 
     }
 
+    /** Number of squares a cascading dig digs at a time, see Dig. */
+    public static final int SLICE = 4096;
+    /** Minimum number of milliseconds between two partial results of a dig. */
+    public static final long PROGRESS_INTERVAL = 100;
+
     /**
      * @param x: horizontal int coordinate
      * @param y: vertical int coordinate
      * @return a specific string messages after digging
      **/
     public String dig(int x, int y) {
-        if (x >= 0 && y >= 0 && x < size && y < size) {
-            try {
-                squares[x][y].dig();
-            } catch (boomException b) {
-                return b.message();
-            }
+        return dig(x, y, null);
+    }
+
+    /**
+     * A dig is carried out SLICE squares at a time. No lock is held between two
+     * squares (see Square.digOne), so the other players are never held up by a
+     * long cascade. progress, if not null, gets the rows changed by the cascade
+     * so far, at most every PROGRESS_INTERVAL milliseconds and only while the
+     * cascade goes on; the reply is the whole board, as usual.
+     */
+    public String dig(int x, int y, Progress progress) {
+        return dig(x, y, progress, PROGRESS_INTERVAL);
+    }
 
+    // dig(x, y, progress) with partial results at most every interval milliseconds
+    String dig(int x, int y, Progress progress, long interval) {
+        final Dig dig = startDig(x, y);
+        if (progress != null) {
+            dig.dirty = new boolean[size];
+        }
+        long reported = System.nanoTime();
+        while (dig.step(SLICE)) {
+            if (progress != null && System.nanoTime() - reported >= interval * 1000000) {
+                for (int row = 0; row < size; row++) {
+                    if (dig.dirty[row]) {
+                        dig.dirty[row] = false;
+                        progress.partial(row, row(row));
+                    }
+                }
+                reported = System.nanoTime();
+            }
+        }
+        if (dig.boom()) {
+            return boomException.message;
         }
         // if there is no BOOM! message, return board message
         return toString();
     }
 
     public String flag(int x, int y) {
-
-        if (x >= 0 && y >= 0 && x < size && y < size) {
-            squares[x][y].flag();
-        }
+        flagSquare(x, y);
         // return board message
         return toString();
     }
 
     public String deflag(int x, int y) {
+        deflagSquare(x, y);
+        // return board message
+        return toString();
+
+    }
+
+    /*
+     * the mutations alone, without rendering the board, for callers that reply
+     * to several of them with one rendering (see SerialBoard), or do not reply
+     * at all (see ReplicaBoard)
+     */
+
+    /**
+     * A dig in progress: the square itself has been dug, the squares it
+     * cascades to are dug by step().
+     * 
+     * A square is dug as soon as it is reached, and only the zero squares this
+     * Dig dug itself are queued, to dig their neighbors later: no square is
+     * queued twice. The queue is first-in first-out, so it only holds the edge
+     * of the area dug so far rather than the area itself. Squares are queued as
+     * x * size + y, so that the rows they are on are known (see dirty).
+     */
+    final class Dig {
+        private final boolean boom;
+        private int[] frontier; // a ring of count squares from head, null if there is nothing left to dig
+        private int head = 0;
+        private int count = 0;
+        boolean[] dirty; // if not null, step() sets dirty[x] for every square (x, y) it digs
+
+        private Dig(int x, int y) {
+            final int result = x < 0 ? 0 : squares[x][y].digOne();
+            this.boom = (result & Square.BOOM) != 0;
+            if ((result & Square.CASCADE) != 0) {
+                frontier = new int[16];
+                enqueue(x * size + y);
+            }
+        }
+
+        private void enqueue(int square) {
+            if (count == frontier.length) {
+                final int[] grown = new int[count * 2];
+                for (int i = 0; i < count; i++) {
+                    grown[i] = frontier[(head + i) % count];
+                }
+                frontier = grown;
+                head = 0;
+            }
+            frontier[(head + count++) % frontier.length] = square;
+        }
+
+        /**
+         * dig the neighbors of the queued squares until slice more squares (give
+         * or take the neighbors of one square) are dug
+         * 
+         * @return true if some squares are still left to dig
+         */
+        boolean step(int slice) {
+            int dug = 0;
+            while (dug < slice && count > 0) {
+                final int next = frontier[head];
+                head = (head + 1) % frontier.length;
+                count--;
+                final int x = next / size;
+                final int y = next % size;
+                for (int diffx = -1; diffx <= 1; diffx++) {
+                    for (int diffy = -1; diffy <= 1; diffy++) {
+                        final int xcurrent = x + diffx;
+                        final int ycurrent = y + diffy;
+                        if ((diffx == 0 && diffy == 0) || xcurrent < 0 || ycurrent < 0 || xcurrent >= size
+                                || ycurrent >= size) {
+                            continue;
+                        }
+                        // 0 if it was dug by another player's dig, which then carries on from it
+                        final int result = squares[xcurrent][ycurrent].digOne();
+                        if ((result & Square.DUG) != 0) {
+                            dug++;
+                            if (dirty != null) {
+                                dirty[xcurrent] = true;
+                            }
+                        }
+                        if ((result & Square.CASCADE) != 0) {
+                            enqueue(xcurrent * size + ycurrent);
+                        }
+                    }
+                }
+            }
+            if (count == 0) {
+                frontier = null;
+            }
+            return count > 0;
+        }
+
+        // @return true if a bomb was dug, i.e. the BOOM! case
+        boolean boom() {
+            return boom;
+        }
+    }
 
+    // dig (x, y), leaving its cascade to the returned Dig; squares out of the board are ignored
+    Dig startDig(int x, int y) {
         if (x >= 0 && y >= 0 && x < size && y < size) {
-            squares[x][y].deflag();
+            return new Dig(x, y);
+        }
+        return new Dig(-1, -1);
+    }
 
+    /**
+     * dig (x, y) and its whole cascade, like dig, but without rendering the board
+     * 
+     * @return true if a bomb was dug, i.e. the BOOM! case
+     */
+    public boolean digSquare(int x, int y) {
+        final Dig dig = startDig(x, y);
+        while (dig.step(Integer.MAX_VALUE)) {
+            // one step digs the whole cascade
         }
-        // return board message
-        return toString();
+        return dig.boom();
+    }
+
+    public void flagSquare(int x, int y) {
+        if (x >= 0 && y >= 0 && x < size && y < size) {
+            squares[x][y].flag();
+        }
+    }
 
+    public void deflagSquare(int x, int y) {
+        if (x >= 0 && y >= 0 && x < size && y < size) {
+            squares[x][y].deflag();
+        }
+    }
+
+    public String look() {
+        return toString();
     }
 
     /**
      * @returns the string representation of the board
      **/
     public synchronized String toString() {
-        StringBuilder output = new StringBuilder();
+        // every command replies with the board: render it into a buffer kept
+        // across calls, so that the returned String is the only allocation
+        if (rendering == null) {
+            rendering = new byte[2 * size * size];
+        }
+        int length = 0;
         for (int x = 0; x < size; x++) {
             for (int y = 0; y < size; y++) {
-                output.append(squares[x][y].toString());
+                rendering[length++] = (byte) squares[x][y].symbol();
                 if (y != size - 1) {
-                    output.append(' ');
+                    rendering[length++] = ' ';
                 } else {
-                    output.append('\n');
+                    rendering[length++] = '\n';
                 }
             }
         }
+        return new String(rendering, 0, length, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * @return the string representation of row x of the board, as the line x of
+     *         toString() without its newline
+     */
+    public String row(int x) {
+        final StringBuilder output = new StringBuilder(2 * size);
+        for (int y = 0; y < size; y++) {
+            output.append(squares[x][y].symbol());
+            if (y != size - 1) {
+                output.append(' ');
+            }
+        }
         return output.toString();
     }
 
+    /**
+     * The snapshot is only consistent if no dig, flag or deflag runs meanwhile;
+     * callers replicating the board must serialize mutations and snapshots.
+     * 
+     * @return the full state of the board, one Square.snapshot() per square,
+     *         from which new Board(snapshot) rebuilds an identical board
+     */
+    public synchronized char[][] snapshot() {
+        char[][] output = new char[size][size];
+        for (int x = 0; x < size; x++) {
+            for (int y = 0; y < size; y++) {
+                output[x][y] = squares[x][y].snapshot();
+            }
+        }
+        return output;
+    }
+
     
     /**
      * (for test only! not part of the implementation code)
@@ -0,0 +1,123 @@
+package minesweeper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import minesweeper.Square.boomException;
+
+/**
+ * A BoardHistory is a board that remembers every version it went through, so
+ * that a match can be replayed, or rewound to any move and continued from there
+ * as a new branch. It can be played on by a MinesweeperServer like a Board.
+ *
+ * Versions are PersistentBoards, which share all the squares a move did not
+ * touch, so the history costs memory in proportion to the squares changed rather
+ * than to the number of moves times the size of the board.
+ *
+ * The BoardHistory class is thread safe: mutators and accessors of the history
+ * are synchronized; look reads the latest version, which is immutable, without
+ * waiting for a move in progress.
+ *
+ * Version 0 is the initial board, and version i the board after move i.
+ */
+
+public class BoardHistory implements Minefield {
+
+    private final List<PersistentBoard> versions;
+    private final List<String> moves; // moves.get(i - 1) produced version i
+    private volatile PersistentBoard current;
+
+    public BoardHistory(PersistentBoard initial) {
+        this.versions = new ArrayList<PersistentBoard>();
+        this.moves = new ArrayList<String>();
+        this.versions.add(initial);
+        this.current = initial;
+    }
+
+    // constructor based on the first versions of another history
+    private BoardHistory(BoardHistory other, int version) {
+        this.versions = new ArrayList<PersistentBoard>(other.versions.subList(0, version + 1));
+        this.moves = new ArrayList<String>(other.moves.subList(0, version));
+        this.current = versions.get(version);
+    }
+
+    private synchronized void record(String move, PersistentBoard version) {
+        moves.add(move);
+        versions.add(version);
+        current = version;
+    }
+
+    public synchronized String dig(int x, int y) {
+        final PersistentBoard before = current;
+        record("dig " + x + " " + y, before.dig(x, y));
+        if (x >= 0 && y >= 0 && x < before.rows() && y < before.columns() && before.snapshot(x, y) == 'b') {
+            return boomException.message;
+        }
+        return look();
+    }
+
+    public synchronized String flag(int x, int y) {
+        record("flag " + x + " " + y, current.flag(x, y));
+        return look();
+    }
+
+    public synchronized String deflag(int x, int y) {
+        record("deflag " + x + " " + y, current.deflag(x, y));
+        return look();
+    }
+
+    public String look() {
+        return current.toString();
+    }
+
+    /**
+     * @return int number of moves played so far
+     */
+    public synchronized int size() {
+        return moves.size();
+    }
+
+    /**
+     * @return the board as it was after move version (0 for the initial board)
+     */
+    public synchronized PersistentBoard version(int version) {
+        return versions.get(version);
+    }
+
+    /**
+     * @return the move, in the form of the client message ("dig X Y", ...),
+     *         that produced the given version (1 for the first move)
+     */
+    public synchronized String move(int version) {
+        return moves.get(version - 1);
+    }
+
+    /**
+     * Rewind to a previous version in place: the game goes on from there, and the
+     * moves after it are forgotten (branch first to keep them).
+     *
+     * @return the string representation of the board at the given version
+     */
+    public synchronized String rewind(int version) {
+        if (version < 0 || version > moves.size()) {
+            throw new IndexOutOfBoundsException("no version " + version);
+        }
+        versions.subList(version + 1, versions.size()).clear();
+        moves.subList(version, moves.size()).clear();
+        current = versions.get(version);
+        return look();
+    }
+
+    /**
+     * Rewind to a previous version and branch off: the new history shares the
+     * first moves (and all their versions) with this one, which is left unchanged.
+     *
+     * @return a new history whose latest version is the given one
+     */
+    public synchronized BoardHistory branch(int version) {
+        if (version < 0 || version > moves.size()) {
+            throw new IndexOutOfBoundsException("no version " + version);
+        }
+        return new BoardHistory(this, version);
+    }
+}
@@ -1,6 +1,12 @@
 package minesweeper;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 import minesweeper.Square.boomException;
 
 import org.junit.Test;
@@ -19,6 +25,10 @@ import org.junit.Test;
  *     i. single digging
  *     ii. recursive digging
  *     iii. correct state update after a BOOM message
+ * (F) Test that a Board rebuilt from a snapshot plays exactly like the original
+ * (G) Test that a cascade over more than SLICE squares reports the rows it changed,
+ *     each time with more squares dug in the row, no more often than the given
+ *     interval, and ends as a plain dig
  *
  */
 
@@ -99,6 +109,51 @@ public class BoardTest {
     }
 
 
+    @Test
+    public void testSnapshot() {
+        Board board = new Board("src/minesweeper/server/goodBoard.txt");
+        board.dig(4, 0);
+        board.flag(0, 0);
+        board.dig(0, 1);
+        Board copy = new Board(board.snapshot());
+        assertEquals(board.toString(), copy.toString());
+        assertEquals(board.bombDistribution(), copy.bombDistribution());
+        assertEquals(board.dig(1, 1), copy.dig(1, 1));
+    }
+
+
+    @Test
+    public void testProgress() {
+        final int size = 100;
+        Board board = new Board(new boolean[size][size]);
+        final int[] undug = new int[size];
+        Arrays.fill(undug, size);
+        final List<Integer> rows = new ArrayList<Integer>();
+        String result = board.dig(0, 0, new Minefield.Progress() {
+            public void partial(int row, String rendering) {
+                assertEquals(2 * size - 1, rendering.length());
+                int left = rendering.length() - rendering.replace("-", "").length();
+                assertTrue(left < undug[row]);
+                undug[row] = left;
+                rows.add(row);
+            }
+        }, 0);
+        assertTrue(rows.size() > 0);
+        assertEquals(new Board(new boolean[size][size]).dig(0, 0), result);
+        assertEquals(-1, result.indexOf('-'));
+
+        // a whole dig well within the interval reports nothing
+        rows.clear();
+        result = new Board(new boolean[size][size]).dig(0, 0, new Minefield.Progress() {
+            public void partial(int row, String rendering) {
+                rows.add(row);
+            }
+        }, 60000);
+        assertEquals(0, rows.size());
+        assertEquals(-1, result.indexOf('-'));
+    }
+
+
     @Test
     public void testBoomMessage() {
     	Board board = new Board("src/minesweeper/server/goodBoard.txt");
@@ -0,0 +1,309 @@
+package minesweeper;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A BoardTile is the rectangular part of a (possibly huge) board owned by one
+ * shard server. The BoardTile class is thread safe: all methods touching the
+ * squares are synchronized.
+ *
+ * Besides the squares it owns, a tile keeps a one-square "halo" of copies of the
+ * squares surrounding it, so that the bomb numbers along its border are correct.
+ * The copies only record whether there is a bomb (see defuse), never whether the
+ * square is dug or flagged: that is known by the owning tile alone. A cascading
+ * dig that reaches a halo square reports it as a "spill", which must be dug on
+ * the tile that owns it (where it may be dug already, or flagged); that tile's
+ * answer may in turn spill back onto this one.
+ *
+ * Coordinates are always those of the whole board, as in Board: x is the row and
+ * y is the column.
+ */
+
+public class BoardTile {
+
+	/* field definitions:
+	 * fields "top", "left", "bottom" and "right" bound the owned squares
+	 * [top, bottom) x [left, right)
+	 * fields "haloTop" and "haloLeft" are the board coordinates of squares[0][0]
+	 * fields "rows" and "columns" are the dimensions of the whole board
+	 * field "halo" lists the coordinates of the squares held as copies
+	 */
+    private final int top, left, bottom, right;
+    private final int haloTop, haloLeft;
+    private final int rows, columns;
+    private final Square[][] squares;
+
+    /**
+     * @param bombState the bomb layout of the whole board, indexed [x][y]
+     */
+    public BoardTile(boolean[][] bombState, int top, int left, int bottom, int right) {
+        this.top = top;
+        this.left = left;
+        this.bottom = bottom;
+        this.right = right;
+        this.rows = bombState.length;
+        this.columns = rows == 0 ? 0 : bombState[0].length;
+        checkBounds();
+        this.haloTop = Math.max(0, top - 1);
+        this.haloLeft = Math.max(0, left - 1);
+        this.squares = new Square[Math.min(rows, bottom + 1) - haloTop][Math.min(columns, right + 1) - haloLeft];
+        for (int x = 0; x < squares.length; x++) {
+            for (int y = 0; y < squares[x].length; y++) {
+                squares[x][y] = new Square(bombState[haloTop + x][haloLeft + y]);
+            }
+        }
+
+        generateNeighborList();
+    }
+
+    /**
+     * Load a tile from a board file in the format used by MinesweeperServer's -f option.
+     * Only the rows and columns of the tile and its halo are kept in memory, so the
+     * whole board never has to fit in one process.
+     */
+    public BoardTile(String filename, int top, int left, int bottom, int right) {
+        this.top = top;
+        this.left = left;
+        this.bottom = bottom;
+        this.right = right;
+        this.haloTop = Math.max(0, top - 1);
+        this.haloLeft = Math.max(0, left - 1);
+        final List<boolean[]> window = new ArrayList<boolean[]>();
+        int width = -1;
+        int x = 0;
+        try {
+            final BufferedReader reader = new BufferedReader(new FileReader(filename));
+            try {
+                for (String line = reader.readLine(); line != null; line = reader.readLine(), x++) {
+                    final String[] tokens = line.split("\\s");
+                    if (width == -1) {
+                        width = tokens.length;
+                    } else if (tokens.length != width) {
+                        throw new RuntimeException("invalid file format!");
+                    }
+                    final boolean keep = x >= haloTop && x <= bottom;
+                    final boolean[] row = keep ? new boolean[Math.max(0, Math.min(width, right + 1) - haloLeft)] : null;
+                    for (int y = 0; y < width; y++) {
+                        // input file must contain zero's and one's only
+                        if (!tokens[y].equals("1") && !tokens[y].equals("0")) {
+                            throw new RuntimeException("invalid file format!");
+                        }
+                        if (keep && y >= haloLeft && y <= right) {
+                            row[y - haloLeft] = tokens[y].equals("1");
+                        }
+                    }
+                    if (keep) {
+                        window.add(row);
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("IO exception");
+        }
+        this.rows = x;
+        this.columns = Math.max(width, 0);
+        checkBounds();
+        this.squares = new Square[window.size()][];
+        for (int i = 0; i < squares.length; i++) {
+            final boolean[] row = window.get(i);
+            squares[i] = new Square[row.length];
+            for (int j = 0; j < row.length; j++) {
+                squares[i][j] = new Square(row[j]);
+            }
+        }
+
+        generateNeighborList();
+    }
+
+    private void checkBounds() {
+        if (top < 0 || left < 0 || top >= bottom || left >= right || bottom > rows || right > columns) {
+            throw new IllegalArgumentException("tile [" + top + ", " + bottom + ") x [" + left + ", " + right
+                    + ") does not fit a " + rows + " by " + columns + " board");
+        }
+    }
+
+    /*
+     * only owned squares get an adjacency list (used for the bomb numbers); halo
+     * squares are merely counted
+     */
+    private void generateNeighborList() {
+        for (int x = top; x < bottom; x++) {
+            for (int y = left; y < right; y++) {
+                for (int diffx = -1; diffx <= 1; diffx++) {
+                    for (int diffy = -1; diffy <= 1; diffy++) {
+                        if ((diffx != 0 || diffy != 0) && inHalo(x + diffx, y + diffy)) {
+                            square(x, y).addAdjacent(square(x + diffx, y + diffy));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private Square square(int x, int y) {
+        return squares[x - haloTop][y - haloLeft];
+    }
+
+    /**
+     * @return true if the square at (x, y) belongs to this tile
+     */
+    public boolean owns(int x, int y) {
+        return x >= top && y >= left && x < bottom && y < right;
+    }
+
+    /**
+     * @return true if this tile holds the square at (x, y), either as an owned square or as a copy
+     */
+    public boolean inHalo(int x, int y) {
+        return x >= haloTop && y >= haloLeft && x < haloTop + squares.length && y < haloLeft + squares[x - haloTop].length;
+    }
+
+    /**
+     * Dig an owned square, see dig(List, List).
+     */
+    public boolean dig(int x, int y, List<int[]> spills) {
+        final List<int[]> cells = new ArrayList<int[]>(1);
+        cells.add(new int[] { x, y });
+        return dig(cells, spills);
+    }
+
+    /**
+     * Dig owned squares, and cascade from them as Board.dig does. Squares outside
+     * the tile are ignored.
+     *
+     * @param cells the {x, y} coordinates of the squares to dig
+     * @param spills receives, once each, the {x, y} coordinates of every square owned
+     *        by another tile that the cascade reached, and which must be dug on that
+     *        tile; it may already be dug or flagged there
+     * @return true if a bomb was dug (i.e. the BOOM! case)
+     */
+    public synchronized boolean dig(List<int[]> cells, List<int[]> spills) {
+        // the zero squares dug but not cascaded from yet, as indexes into squares
+        final int width = squares[0].length;
+        int[] cascade = new int[16];
+        int top = 0;
+        boolean boom = false;
+        for (int[] cell : cells) {
+            if (owns(cell[0], cell[1])) {
+                final int result = square(cell[0], cell[1]).digOne();
+                boom |= (result & Square.BOOM) != 0;
+                if ((result & Square.CASCADE) != 0) {
+                    if (top == cascade.length) {
+                        cascade = Arrays.copyOf(cascade, top * 2);
+                    }
+                    cascade[top++] = (cell[0] - haloTop) * width + cell[1] - haloLeft;
+                }
+            }
+        }
+        final Set<Long> spilled = new HashSet<Long>();
+        while (top > 0) {
+            final int next = cascade[--top];
+            final int x = haloTop + next / width;
+            final int y = haloLeft + next % width;
+            for (int diffx = -1; diffx <= 1; diffx++) {
+                for (int diffy = -1; diffy <= 1; diffy++) {
+                    final int xcurrent = x + diffx;
+                    final int ycurrent = y + diffy;
+                    if ((diffx == 0 && diffy == 0) || !inHalo(xcurrent, ycurrent)) {
+                        continue;
+                    }
+                    if (!owns(xcurrent, ycurrent)) {
+                        if (spilled.add((long) xcurrent * columns + ycurrent)) {
+                            spills.add(new int[] { xcurrent, ycurrent });
+                        }
+                    } else if ((square(xcurrent, ycurrent).digOne() & Square.CASCADE) != 0) {
+                        // dug as it is pushed, so that no square is pushed twice
+                        if (top == cascade.length) {
+                            cascade = Arrays.copyOf(cascade, top * 2);
+                        }
+                        cascade[top++] = (xcurrent - haloTop) * width + ycurrent - haloLeft;
+                    }
+                }
+            }
+        }
+        return boom;
+    }
+
+    public synchronized void flag(int x, int y) {
+        if (owns(x, y)) {
+            square(x, y).flag();
+        }
+    }
+
+    public synchronized void deflag(int x, int y) {
+        if (owns(x, y)) {
+            square(x, y).deflag();
+        }
+    }
+
+    /**
+     * Called when the tile owning (x, y) reports that the bomb there has been dug:
+     * update the copy, and the bomb numbers of the owned squares around it.
+     */
+    public synchronized void defuse(int x, int y) {
+        if (owns(x, y) || !inHalo(x, y) || !square(x, y).defuse()) {
+            return;
+        }
+        for (int diffx = -1; diffx <= 1; diffx++) {
+            for (int diffy = -1; diffy <= 1; diffy++) {
+                if (owns(x + diffx, y + diffy)) {
+                    square(x + diffx, y + diffy).decreaseBomb();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the string representation of the owned squares, one line per row,
+     *         in the same format as Board.toString()
+     */
+    public synchronized String toString() {
+        StringBuilder output = new StringBuilder();
+        for (int x = top; x < bottom; x++) {
+            for (int y = left; y < right; y++) {
+                output.append(square(x, y).toString());
+                output.append(y != right - 1 ? ' ' : '\n');
+            }
+        }
+        return output.toString();
+    }
+
+    public int top() {
+        return top;
+    }
+
+    public int left() {
+        return left;
+    }
+
+    public int bottom() {
+        return bottom;
+    }
+
+    public int right() {
+        return right;
+    }
+
+    /**
+     * @return int number of rows of the whole board
+     */
+    public int rows() {
+        return rows;
+    }
+
+    /**
+     * @return int number of columns of the whole board
+     */
+    public int columns() {
+        return columns;
+    }
+}
@@ -0,0 +1,89 @@
+package minesweeper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ *
+ * Test Strategy:
+ *
+ * (A) Test that a tile loaded from a file renders only the squares it owns
+ * (B) Test that a cascading dig reports the squares of other tiles it reaches,
+ *     once each, and reports them again on a later cascade
+ * (C) Test a dig of several squares at once
+ *
+ * Tiles playing together, over the shard protocol, are tested by ShardedBoardTest.
+ *
+ */
+
+public class BoardTileTest {
+
+    private static final boolean[][] sparse = {
+            { false, false, false, false, true },
+            { false, false, false, false, false },
+            { false, false, false, false, false },
+            { true, false, false, false, false },
+            { false, false, false, true, false } };
+
+    @Test
+    public void testFileTile() {
+        BoardTile tile = new BoardTile("src/minesweeper/server/goodBoard.txt", 1, 1, 3, 4);
+        assertEquals(5, tile.rows());
+        assertEquals(5, tile.columns());
+        assertEquals("- - -\n- - -\n", tile.toString());
+        List<int[]> spills = new ArrayList<int[]>();
+        assertFalse(tile.dig(2, 1, spills));
+        assertEquals("- - -\n2 - -\n", tile.toString());
+        assertTrue(spills.isEmpty());
+    }
+
+    @Test
+    public void testSpills() {
+        BoardTile tile = new BoardTile(sparse, 0, 0, 2, 3);
+        List<int[]> spills = new ArrayList<int[]>();
+        assertFalse(tile.dig(0, 0, spills));
+        assertEquals("     \n     \n", tile.toString());
+        // the whole halo: the row below and the column to the right of the tile
+        assertEquals(6, spills.size());
+    }
+
+    @Test
+    public void testSpillAgain() {
+        BoardTile tile = new BoardTile(new boolean[5][5], 0, 0, 2, 5);
+        tile.flag(0, 2);
+        tile.flag(1, 2);
+        List<int[]> spills = new ArrayList<int[]>();
+        assertFalse(tile.dig(0, 0, spills));
+        assertEquals(3, spills.size());
+        // (2, 2) is reported again: the copy does not record the first spill, which
+        // may have been a no-op on the owner
+        spills.clear();
+        assertFalse(tile.dig(0, 4, spills));
+        assertEquals(3, spills.size());
+        boolean again = false;
+        for (int[] cell : spills) {
+            again |= cell[0] == 2 && cell[1] == 2;
+        }
+        assertTrue(again);
+    }
+
+    @Test
+    public void testDigSeveral() {
+        BoardTile tile = new BoardTile(sparse, 2, 0, 5, 5);
+        List<int[]> cells = new ArrayList<int[]>();
+        cells.add(new int[] { 2, 4 });
+        cells.add(new int[] { 4, 0 });
+        cells.add(new int[] { 0, 0 });
+        List<int[]> spills = new ArrayList<int[]>();
+        assertFalse(tile.dig(cells, spills));
+        // (0, 0) is not owned by the tile, and (4, 0) does not cascade
+        assertEquals("- 1      \n- 1 1 1 1\n1 - - - -\n", tile.toString());
+        assertEquals(4, spills.size());
+    }
+}
@@ -0,0 +1,122 @@
+package minesweeper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A CellStore is a long-indexed array of bytes kept outside of the Java heap,
+ * either in direct memory or in a memory-mapped file. It is split into 1 GiB
+ * ByteBuffers, since a single buffer is int-indexed, so it can hold more than
+ * 2^31 bytes. A mapped store can be larger than the RAM of the machine, and its
+ * contents survive the process once flushed.
+ *
+ * The CellStore class is not thread safe; its owner (LargeBoard) synchronizes
+ * every access.
+ */
+
+public final class CellStore {
+
+    /** log2 of the size of a chunk, 1 GiB */
+    static final int CHUNK_BITS = 30;
+
+    private final ByteBuffer[] chunks;
+    private final long size;
+    private final int chunkBits;
+    private final long chunkMask;
+
+    private CellStore(ByteBuffer[] chunks, long size, int chunkBits) {
+        this.chunks = chunks;
+        this.size = size;
+        this.chunkBits = chunkBits;
+        this.chunkMask = (1L << chunkBits) - 1;
+    }
+
+    /**
+     * @return a zeroed store of size bytes in direct memory (which is limited by
+     *         -XX:MaxDirectMemorySize, by default the maximum heap size)
+     */
+    public static CellStore allocate(long size) {
+        return allocate(size, CHUNK_BITS);
+    }
+
+    // allocate(size) in chunks of 2^chunkBits bytes
+    static CellStore allocate(long size, int chunkBits) {
+        final long chunk = 1L << chunkBits;
+        ByteBuffer[] chunks = new ByteBuffer[(int) ((size + chunk - 1) >> chunkBits)];
+        for (int i = 0; i < chunks.length; i++) {
+            chunks[i] = ByteBuffer.allocateDirect((int) Math.min(chunk, size - ((long) i << chunkBits)));
+        }
+        return new CellStore(chunks, size, chunkBits);
+    }
+
+    /**
+     * @return a store of size bytes mapped onto file, which is created (zeroed)
+     *         or grown to size bytes if needed; existing contents are kept
+     */
+    public static CellStore map(File file, long size) throws IOException {
+        return map(file, size, CHUNK_BITS);
+    }
+
+    // map(file, size) in chunks of 2^chunkBits bytes
+    static CellStore map(File file, long size, int chunkBits) throws IOException {
+        final long chunk = 1L << chunkBits;
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            FileChannel channel = raf.getChannel();
+            ByteBuffer[] chunks = new ByteBuffer[(int) ((size + chunk - 1) >> chunkBits)];
+            for (int i = 0; i < chunks.length; i++) {
+                final long start = (long) i << chunkBits;
+                chunks[i] = channel.map(FileChannel.MapMode.READ_WRITE, start, Math.min(chunk, size - start));
+            }
+            // the mappings stay valid once the file is closed
+            return new CellStore(chunks, size, chunkBits);
+        } finally {
+            raf.close();
+        }
+    }
+
+    public byte get(long index) {
+        return chunks[(int) (index >> chunkBits)].get((int) (index & chunkMask));
+    }
+
+    public void set(long index, byte value) {
+        chunks[(int) (index >> chunkBits)].put((int) (index & chunkMask), value);
+    }
+
+    /**
+     * @return the 4 bytes at index as a (big-endian) int
+     */
+    public int getInt(long index) {
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+            value = value << 8 | (get(index + i) & 0xff);
+        }
+        return value;
+    }
+
+    public void setInt(long index, int value) {
+        for (int i = 0; i < 4; i++) {
+            set(index + i, (byte) (value >>> (24 - 8 * i)));
+        }
+    }
+
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Write the contents of a mapped store back to its file; does nothing for a
+     * store in direct memory.
+     */
+    public void flush() {
+        for (ByteBuffer chunk : chunks) {
+            if (chunk instanceof MappedByteBuffer) {
+                ((MappedByteBuffer) chunk).force();
+            }
+        }
+    }
+}
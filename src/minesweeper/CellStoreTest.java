@@ -0,0 +1,84 @@
+package minesweeper;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Test;
+
+/**
+ *
+ * Test Strategy:
+ *
+ * (A) Test get, set, getInt and setInt across the boundary between two chunks,
+ *     with chunks of a few bytes
+ *     i. in direct memory
+ *     ii. mapped onto a file, and mapped again
+ * (B) Test indexes beyond the int range, on a sparse file mapped in 1 GiB chunks
+ *
+ */
+
+public class CellStoreTest {
+
+    private static final int SMALL_CHUNK_BITS = 3;
+
+    private static void checkBoundary(CellStore store) {
+        // the chunks are [0, 8), [8, 16) and [16, 20)
+        store.set(7, (byte) 1);
+        store.set(8, (byte) 2);
+        assertEquals(1, store.get(7));
+        assertEquals(2, store.get(8));
+        assertEquals(0, store.get(9));
+        store.setInt(14, 0x12345678);
+        assertEquals(0x12345678, store.getInt(14));
+        assertEquals(0x34, store.get(15));
+        assertEquals(0x56, store.get(16));
+        store.set(19, (byte) -1);
+        assertEquals(-1, store.get(19));
+    }
+
+    @Test
+    public void testAllocatedChunks() {
+        CellStore store = CellStore.allocate(20, SMALL_CHUNK_BITS);
+        assertEquals(20, store.size());
+        checkBoundary(store);
+    }
+
+    @Test
+    public void testMappedChunks() throws IOException {
+        File map = File.createTempFile("cells", ".map");
+        try {
+            CellStore store = CellStore.map(map, 20, SMALL_CHUNK_BITS);
+            checkBoundary(store);
+            store.flush();
+            CellStore reopened = CellStore.map(map, 20, SMALL_CHUNK_BITS);
+            assertEquals(2, reopened.get(8));
+            assertEquals(0x12345678, reopened.getInt(14));
+            // the chunking is not part of the file format
+            assertEquals(0x12345678, CellStore.map(map, 20).getInt(14));
+        } finally {
+            map.delete();
+        }
+    }
+
+    @Test
+    public void testBeyondIntRange() throws IOException {
+        final long size = (1L << 32) + 16;
+        File map = File.createTempFile("cells", ".map");
+        try {
+            CellStore store = CellStore.map(map, size);
+            final long last = size - 1;
+            store.set(last, (byte) 5);
+            store.setInt((1L << 31) - 2, 0x0a0b0c0d);
+            store.setInt((3L << CellStore.CHUNK_BITS) - 1, -2);
+            assertEquals(5, store.get(last));
+            assertEquals(0, store.get(last - (1L << 32)));
+            assertEquals(0x0a0b0c0d, store.getInt((1L << 31) - 2));
+            assertEquals(0x0c, store.get(1L << 31));
+            assertEquals(-2, store.getInt((3L << CellStore.CHUNK_BITS) - 1));
+        } finally {
+            map.delete();
+        }
+    }
+}
@@ -0,0 +1,380 @@
+package minesweeper;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.Random;
+import minesweeper.Minefield.Progress;
+import minesweeper.Square.boomException;
+
+/**
+ * A LargeBoard plays by the same rules as Board, but keeps its squares in a
+ * CellStore (one byte per square, outside of the Java heap) instead of a
+ * Square[size][size]. Boards may be rectangular and hold more than 2^31 squares
+ * (each dimension is still an int); a board mapped onto a file may be larger than
+ * the RAM and is reopened as it was left by a previous run.
+ *
+ * The number of bombs around a square is not stored: it is counted from the
+ * neighboring squares whenever it is needed, so digging a bomb needs no update
+ * of its neighbors.
+ *
+ * The LargeBoard class is thread safe: all methods accessing the store are
+ * synchronized. A dig cascading over a large area only holds the lock for
+ * Board.SLICE squares at a time, and rendering only for one row at a time, so
+ * that the other players get a turn.
+ */
+
+public class LargeBoard implements Minefield {
+
+    /* square encoding */
+    private static final byte BOMB = 0x1;
+    private static final byte FLAGGED = 0x2;
+    private static final byte DUG = 0x4;
+
+    /* store layout: MAGIC, rows and columns as ints, then the squares row by row */
+    private static final int MAGIC = 0x4d494e45; // "MINE"
+    private static final long HEADER = 12;
+
+    /**
+     * Maximum number of squares rendered at once: a look (so also the reply to a
+     * dig, flag or deflag) at a larger board only shows its top-left corner, at
+     * most RENDER_WIDTH squares wide; use toString(top, left, bottom, right) to
+     * see the rest.
+     */
+    public static final int RENDER_LIMIT = 1 << 22;
+    public static final int RENDER_WIDTH = 1 << 11;
+
+    private final CellStore cells;
+    private final int rows;
+    private final int columns;
+
+    // constructor based on a store written by a previous LargeBoard
+    public LargeBoard(File map) throws IOException {
+        final CellStore header = CellStore.map(map, HEADER);
+        if (header.getInt(0) != MAGIC) {
+            throw new IOException("not a board: " + map);
+        }
+        this.rows = header.getInt(4);
+        this.columns = header.getInt(8);
+        this.cells = CellStore.map(map, HEADER + (long) rows * columns);
+    }
+
+    /**
+     * constructor based on size: a random board, like Board(int)
+     * @param map file to map the board onto, or null to keep it in direct memory
+     */
+    public LargeBoard(int rows, int columns, File map) throws IOException {
+        this(rows, columns, map, 0.25);
+    }
+
+    // a random board with the given probability of a bomb per square; 0 leaves the store as created
+    LargeBoard(int rows, int columns, File map, double bombProbability) throws IOException {
+        this.rows = rows;
+        this.columns = columns;
+        this.cells = create(map);
+        Random randomBomb = new Random();
+        for (long i = 0; bombProbability > 0 && i < (long) rows * columns; i++) {
+            if (randomBomb.nextDouble() < bombProbability) {
+                cells.set(HEADER + i, BOMB);
+            }
+        }
+    }
+
+    /**
+     * constructor based on filename, in the format of Board(String), except that
+     * the board may be rectangular; the file is read twice, to size the store first
+     * @param map file to map the board onto, or null to keep it in direct memory
+     */
+    public LargeBoard(String filename, File map) throws IOException {
+        int rows = 0;
+        int columns = -1;
+        BufferedReader reader = new BufferedReader(new FileReader(filename));
+        try {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                final int width = (line.length() + 1) / 2;
+                if (columns != -1 && width != columns) {
+                    throw new RuntimeException("invalid file format!");
+                }
+                columns = width;
+                rows++;
+            }
+        } finally {
+            reader.close();
+        }
+        this.rows = rows;
+        this.columns = Math.max(columns, 0);
+        this.cells = create(map);
+        reader = new BufferedReader(new FileReader(filename));
+        try {
+            long i = HEADER;
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                for (int y = 0; y < line.length(); y++) {
+                    final char c = line.charAt(y);
+                    if (y % 2 == 1 ? c != ' ' : c != '0' && c != '1') {
+                        // input file must contain zero's and one's only
+                        throw new RuntimeException("invalid file format!");
+                    }
+                    if (c == '1') {
+                        cells.set(i, BOMB);
+                    }
+                    if (y % 2 == 0) {
+                        i++;
+                    }
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    private CellStore create(File map) throws IOException {
+        final long size = HEADER + (long) rows * columns;
+        if (map != null && map.exists() && !map.delete()) {
+            throw new IOException("cannot replace " + map);
+        }
+        final CellStore cells = map == null ? CellStore.allocate(size) : CellStore.map(map, size);
+        cells.setInt(0, MAGIC);
+        cells.setInt(4, rows);
+        cells.setInt(8, columns);
+        return cells;
+    }
+
+    private boolean inRange(int x, int y) {
+        return x >= 0 && y >= 0 && x < rows && y < columns;
+    }
+
+    private long index(int x, int y) {
+        return HEADER + (long) x * columns + y;
+    }
+
+    private int countBombs(int x, int y) {
+        int count = 0;
+        for (int diffx = -1; diffx <= 1; diffx++) {
+            for (int diffy = -1; diffy <= 1; diffy++) {
+                if ((diffx != 0 || diffy != 0) && inRange(x + diffx, y + diffy)
+                        && (cells.get(index(x + diffx, y + diffy)) & BOMB) != 0) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @param x: horizontal int coordinate
+     * @param y: vertical int coordinate
+     * @return a specific string messages after digging
+     **/
+    public String dig(int x, int y) {
+        return dig(x, y, null);
+    }
+
+    /**
+     * Same as dig(x, y); progress, if not null, gets the rows of the look changed
+     * by the cascade so far, at most every Board.PROGRESS_INTERVAL milliseconds
+     * (see Board.dig(int, int, Progress)).
+     */
+    public String dig(int x, int y, Progress progress) {
+        return dig(x, y, progress, Board.PROGRESS_INTERVAL);
+    }
+
+    // dig(x, y, progress) with partial results at most every interval milliseconds
+    String dig(int x, int y, Progress progress, long interval) {
+        final Cascade cascade = new Cascade();
+        if (progress != null) {
+            cascade.dirty = new BitSet();
+        }
+        synchronized (this) {
+            // the square itself is dug under the same lock as it is checked, so only one dig gets the BOOM
+            if (!inRange(x, y) || (cells.get(index(x, y)) & (FLAGGED | DUG)) != 0) {
+                return look();
+            }
+            cascade.boom = (cells.get(index(x, y)) & BOMB) != 0;
+            cells.set(index(x, y), DUG);
+            if (countBombs(x, y) == 0) {
+                cascade.enqueue((long) x * columns + y);
+            }
+        }
+        long reported = System.nanoTime();
+        while (step(cascade, Board.SLICE)) {
+            if (progress != null && System.nanoTime() - reported >= interval * 1000000) {
+                final int width = lookWidth();
+                for (int row = cascade.dirty.nextSetBit(0); row >= 0; row = cascade.dirty.nextSetBit(row + 1)) {
+                    final String rendering = toString(row, 0, row + 1, width);
+                    progress.partial(row, rendering.substring(0, rendering.length() - 1));
+                }
+                cascade.dirty.clear();
+                reported = System.nanoTime();
+            }
+        }
+        if (cascade.boom) {
+            return boomException.message;
+        }
+        return look();
+    }
+
+    /*
+     * As in Board.Dig, a square is dug as soon as it is reached and only the zero
+     * squares are queued, each once, first-in first-out: the queue holds the edge
+     * of the area dug so far, not the area.
+     */
+    private static final class Cascade {
+        private boolean boom;
+        // zero squares whose neighbors are still to dig, as x * columns + y: a ring of count squares from head
+        private long[] frontier = new long[16];
+        private int head = 0;
+        private int count = 0;
+        // if not null, the rows of the look dug since the last partial result
+        private BitSet dirty;
+
+        private void enqueue(long square) {
+            if (count == frontier.length) {
+                if (count == MAX_FRONTIER) {
+                    throw new IllegalStateException("cascade edge longer than " + MAX_FRONTIER + " squares");
+                }
+                final long[] grown = new long[(int) Math.min(2L * count, MAX_FRONTIER)];
+                for (int i = 0; i < count; i++) {
+                    grown[i] = frontier[(head + i) % count];
+                }
+                frontier = grown;
+                head = 0;
+            }
+            frontier[(head + count++) % frontier.length] = square;
+        }
+    }
+
+    // the largest array the VMs allow
+    private static final int MAX_FRONTIER = Integer.MAX_VALUE - 8;
+
+    /*
+     * dig the neighbors of the squares queued in cascade until slice squares are
+     * dug (give or take the neighbors of one square)
+     * @return true if some squares are still left to dig
+     */
+    private synchronized boolean step(Cascade cascade, int slice) {
+        final int height = lookHeight();
+        int dug = 0;
+        while (dug < slice && cascade.count > 0) {
+            final long next = cascade.frontier[cascade.head];
+            cascade.head = (cascade.head + 1) % cascade.frontier.length;
+            cascade.count--;
+            final int x = (int) (next / columns);
+            final int y = (int) (next % columns);
+            for (int diffx = -1; diffx <= 1; diffx++) {
+                for (int diffy = -1; diffy <= 1; diffy++) {
+                    final int xcurrent = x + diffx;
+                    final int ycurrent = y + diffy;
+                    if ((diffx == 0 && diffy == 0) || !inRange(xcurrent, ycurrent)
+                            || (cells.get(index(xcurrent, ycurrent)) & (FLAGGED | DUG)) != 0) {
+                        continue;
+                    }
+                    // never a bomb: (x, y) has none around it
+                    cells.set(index(xcurrent, ycurrent), DUG);
+                    dug++;
+                    if (cascade.dirty != null && xcurrent < height && ycurrent < RENDER_WIDTH) {
+                        cascade.dirty.set(xcurrent);
+                    }
+                    if (countBombs(xcurrent, ycurrent) == 0) {
+                        cascade.enqueue((long) xcurrent * columns + ycurrent);
+                    }
+                }
+            }
+        }
+        return cascade.count > 0;
+    }
+
+    public String flag(int x, int y) {
+        synchronized (this) {
+            if (inRange(x, y) && (cells.get(index(x, y)) & (FLAGGED | DUG)) == 0) {
+                cells.set(index(x, y), (byte) (cells.get(index(x, y)) | FLAGGED));
+            }
+        }
+        return look();
+    }
+
+    public String deflag(int x, int y) {
+        synchronized (this) {
+            if (inRange(x, y) && (cells.get(index(x, y)) & FLAGGED) != 0) {
+                cells.set(index(x, y), (byte) (cells.get(index(x, y)) & ~FLAGGED));
+            }
+        }
+        return look();
+    }
+
+    /**
+     * @return the string representation of the board, as Board.toString(); boards
+     *         of more than RENDER_LIMIT squares are only shown in part, see
+     *         RENDER_LIMIT
+     */
+    public String look() {
+        return toString(0, 0, lookHeight(), lookWidth());
+    }
+
+    // the number of columns shown by a look
+    private int lookWidth() {
+        return Math.min(columns, RENDER_WIDTH);
+    }
+
+    // the number of rows shown by a look
+    private int lookHeight() {
+        return Math.min(rows, RENDER_LIMIT / Math.max(lookWidth(), 1));
+    }
+
+    /**
+     * The squares are read one row at a time, so a row may show moves that the
+     * rows above it do not show yet.
+     * 
+     * @return the string representation of the squares [top, bottom) x [left, right),
+     *         in the format of Board.toString()
+     * @throws IllegalArgumentException if the region is not within the board, or
+     *         holds more than RENDER_LIMIT squares
+     */
+    public String toString(int top, int left, int bottom, int right) {
+        if (top < 0 || left < 0 || top > bottom || left > right || bottom > rows || right > columns) {
+            throw new IllegalArgumentException("not a region of the board: " + top + " " + left + " " + bottom
+                    + " " + right);
+        }
+        if ((long) (bottom - top) * (right - left) > RENDER_LIMIT) {
+            throw new IllegalArgumentException("more than " + RENDER_LIMIT + " squares to render");
+        }
+        StringBuilder output = new StringBuilder(2 * (bottom - top) * (right - left));
+        for (int x = top; x < bottom; x++) {
+            synchronized (this) {
+                for (int y = left; y < right; y++) {
+                    final byte square = cells.get(index(x, y));
+                    if ((square & FLAGGED) != 0) {
+                        output.append('F');
+                    } else if ((square & DUG) == 0) {
+                        output.append('-');
+                    } else {
+                        final int count = countBombs(x, y);
+                        output.append(count == 0 ? ' ' : (char) ('0' + count));
+                    }
+                    output.append(y != right - 1 ? ' ' : '\n');
+                }
+            }
+        }
+        return output.toString();
+    }
+
+    public String toString() {
+        return look();
+    }
+
+    /**
+     * Write the board back to its file, if it is mapped onto one.
+     */
+    public synchronized void flush() {
+        cells.flush();
+    }
+
+    public int rows() {
+        return rows;
+    }
+
+    public int columns() {
+        return columns;
+    }
+}
@@ -0,0 +1,185 @@
+package minesweeper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import minesweeper.Square.boomException;
+
+import org.junit.Test;
+
+/**
+ *
+ * Test Strategy:
+ *
+ * (A) Test that a LargeBoard loaded from a file plays exactly like a Board
+ *     i. recursive digging
+ *     ii. flag and deflag
+ *     iii. BOOM, and the bomb numbers around it
+ * (B) Test a rectangular board, and the rendering of its regions
+ *     i. a region out of the board is rejected
+ *     ii. a look at a board wider than RENDER_WIDTH shows its left part only
+ * (C) Test that a board mapped onto a file is reopened as it was left
+ *     i. a small board
+ *     ii. a board of more than 2^31 squares, played past the int range and
+ *         across the boundaries of the store's chunks
+ * (D) Test that of two players digging the same bomb at once, only one gets BOOM
+ * (E) Test that a cascade over more than SLICE squares reports the rows it
+ *     changed, and ends as a plain dig
+ *
+ */
+
+public class LargeBoardTest {
+
+    @Test
+    public void testSameAsBoard() throws IOException {
+        Board board = new Board("src/minesweeper/server/goodBoard.txt");
+        LargeBoard large = new LargeBoard("src/minesweeper/server/goodBoard.txt", null);
+        assertEquals(board.toString(), large.look());
+        assertEquals(board.dig(4, 0), large.dig(4, 0));
+        assertEquals(board.flag(0, 0), large.flag(0, 0));
+        assertEquals(board.dig(0, 0), large.dig(0, 0));
+        assertSame(boomException.message, large.dig(0, 1));
+        board.dig(0, 1);
+        assertEquals(board.deflag(0, 0), large.deflag(0, 0));
+        assertEquals(board.dig(0, 0), large.dig(0, 0));
+    }
+
+    @Test(expected = Exception.class)
+    public void testBadBoard() throws IOException {
+        new LargeBoard("src/minesweeper/server/badBoard2.txt", null);
+    }
+
+    @Test
+    public void testRectangular() throws IOException {
+        LargeBoard large = new LargeBoard(3, 7, null);
+        assertEquals(3, large.rows());
+        assertEquals(7, large.columns());
+        assertEquals("- - - - - - -\n- - - - - - -\n- - - - - - -\n", large.look());
+        assertEquals("- -\n- -\n", large.toString(1, 5, 3, 7));
+        assertEquals("", large.toString(3, 7, 3, 7));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRegionOutOfBoard() throws IOException {
+        new LargeBoard(3, 7, null).toString(1, 5, 3, 8);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRegionTooLarge() throws IOException {
+        new LargeBoard(LargeBoard.RENDER_LIMIT / 2 + 1, 2, null).toString(0, 0, LargeBoard.RENDER_LIMIT / 2 + 1, 2);
+    }
+
+    @Test
+    public void testWideBoard() throws IOException {
+        LargeBoard large = new LargeBoard(2, LargeBoard.RENDER_WIDTH + 1, null);
+        assertEquals(2 * 2 * LargeBoard.RENDER_WIDTH, large.look().length());
+    }
+
+    @Test
+    public void testMappedFile() throws IOException {
+        File map = File.createTempFile("board", ".map");
+        try {
+            LargeBoard large = new LargeBoard("src/minesweeper/server/goodBoard.txt", map);
+            large.dig(4, 0);
+            large.flag(0, 0);
+            large.flush();
+            LargeBoard reopened = new LargeBoard(map);
+            assertEquals(large.look(), reopened.look());
+            assertEquals("F - - - -\n- - - - -\n1 2 3 - -\n    2 - -\n    1 - -\n", reopened.look());
+        } finally {
+            map.delete();
+        }
+    }
+
+    @Test
+    public void testBeyondIntRange() throws IOException {
+        final int size = 50000;
+        File map = File.createTempFile("board", ".map");
+        try {
+            // a sparse file: only the squares played are ever written
+            LargeBoard large = new LargeBoard(size, size, map, 0);
+            final int x = size - 3;
+            final int y = size - 3;
+            assertTrue((long) x * size > Integer.MAX_VALUE);
+            // a ring of flags, so that the dig inside it does not cascade over the board
+            for (int i = -2; i <= 2; i++) {
+                large.flag(x - 2, y + i);
+                large.flag(x + 2, y + i);
+                large.flag(x + i, y - 2);
+                large.flag(x + i, y + 2);
+            }
+            // the row across the 2 GiB boundary: squares (x, y) are stored at 12 + x * size + y
+            final int boundary = (int) (((2L << CellStore.CHUNK_BITS) - 12) / size);
+            large.flag(boundary, 0);
+            large.flag(boundary, size - 1);
+            large.dig(x, y);
+            final String expected = "F F F F F\nF       F\nF       F\nF       F\nF F F F F\n";
+            assertEquals(expected, large.toString(x - 2, y - 2, x + 3, y + 3));
+            large.flush();
+            LargeBoard reopened = new LargeBoard(map);
+            assertEquals(expected, reopened.toString(x - 2, y - 2, x + 3, y + 3));
+            assertEquals("F -\n", reopened.toString(boundary, 0, boundary + 1, 2));
+            assertEquals("- F\n", reopened.toString(boundary, size - 2, boundary + 1, size));
+        } finally {
+            map.delete();
+        }
+    }
+
+    @Test
+    public void testConcurrentBoom() throws IOException, InterruptedException {
+        for (int trial = 0; trial < 300; trial++) {
+            final LargeBoard large = new LargeBoard("src/minesweeper/server/goodBoard.txt", null);
+            final String[] results = new String[2];
+            Thread[] players = new Thread[2];
+            for (int i = 0; i < 2; i++) {
+                final int player = i;
+                players[i] = new Thread() {
+                    public void run() {
+                        results[player] = large.dig(0, 1);
+                    }
+                };
+            }
+            for (Thread player : players) {
+                player.start();
+            }
+            for (Thread player : players) {
+                player.join();
+            }
+            assertTrue((results[0] == boomException.message) != (results[1] == boomException.message));
+        }
+    }
+
+    @Test
+    public void testProgress() throws IOException {
+        final int size = 100;
+        File empty = File.createTempFile("board", ".txt");
+        try {
+            PrintWriter out = new PrintWriter(empty);
+            for (int x = 0; x < size; x++) {
+                for (int y = 0; y < size; y++) {
+                    out.print(y != size - 1 ? "0 " : "0\n");
+                }
+            }
+            out.close();
+            LargeBoard large = new LargeBoard(empty.getPath(), null);
+            final List<Integer> rows = new ArrayList<Integer>();
+            String result = large.dig(0, 0, new Minefield.Progress() {
+                public void partial(int row, String rendering) {
+                    assertEquals(2 * size - 1, rendering.length());
+                    rows.add(row);
+                }
+            }, 0);
+            assertTrue(rows.size() > 0);
+            assertEquals(new Board(new boolean[size][size]).dig(0, 0), result);
+        } finally {
+            empty.delete();
+        }
+    }
+}
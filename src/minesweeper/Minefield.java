@@ -0,0 +1,48 @@
+package minesweeper;
+
+/**
+ * A Minefield is anything a MinesweeperServerThread can play on: a local Board,
+ * or a board whose squares live somewhere else (e.g. on several shard servers).
+ *
+ * Implementations must be thread safe, since one instance is shared by every
+ * connected client.
+ *
+ * dig, flag and deflag follow the problem set protocol: out-of-range coordinates
+ * are ignored, and the reply is the rendered board, except that a dig on a bomb
+ * replies with boomException.message (the very same String instance, as clients
+ * compare it by reference).
+ */
+public interface Minefield {
+
+    public String dig(int x, int y);
+
+    /**
+     * Same as dig(x, y), but a dig that reveals a large area may report the rows it
+     * changed to progress while it is still being dug. Minefields that do not dig
+     * in slices never call progress.
+     */
+    public default String dig(int x, int y, Progress progress) {
+        return dig(x, y);
+    }
+
+    public String flag(int x, int y);
+
+    public String deflag(int x, int y);
+
+    /**
+     * @return the string representation of the board, as returned for a 'look' message
+     */
+    public String look();
+
+    /**
+     * Receives the partial results of a dig, see dig(int, int, Progress).
+     */
+    public interface Progress {
+        /**
+         * @param row a row changed by the dig so far
+         * @param rendering the string representation of that row, as the line
+         *        row of a look without its newline
+         */
+        public void partial(int row, String rendering);
+    }
+}
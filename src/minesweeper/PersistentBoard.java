@@ -0,0 +1,318 @@
+package minesweeper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A PersistentBoard is one immutable version of a board. dig, flag and deflag
+ * never change it; they return a new version instead, which shares every part
+ * of the board the move did not touch with this one.
+ *
+ * The squares are stored in a quadtree whose leaves are CHUNK by CHUNK blocks of
+ * one byte per square. A move copies the leaves it changes and the path from each
+ * of them to the root, and nothing else: a flag costs one leaf plus O(log n) nodes,
+ * a cascading dig about one leaf per CHUNK * CHUNK squares revealed. Subtrees that
+ * are still all zero (untouched, no bomb, no bomb around) are not stored at all.
+ *
+ * PersistentBoard is immutable, hence thread safe. While a move is being built
+ * its new nodes are tagged with an "edit" token unique to the move and may be
+ * updated in place; the token is dropped when the move returns, so no node can be
+ * modified once a version has been published.
+ *
+ * The game rules are those of Square: see Square.dig() for the BOOM case.
+ */
+
+public final class PersistentBoard {
+
+    private static final int CHUNK_BITS = 3;
+    private static final int CHUNK = 1 << CHUNK_BITS;
+
+    /* square encoding: bits 0-3 number of neighboring bombs, bit 4 bomb, bits 5-6 state */
+    private static final int COUNT = 0x0f;
+    private static final int BOMB = 0x10;
+    private static final int FLAGGED = 0x20;
+    private static final int DUG = 0x40;
+
+    /* field definitions:
+     * "rows" and "columns" are the dimensions of the board, indexed [x][y] as in Board
+     * "depth" is the number of levels of inner nodes above the leaves
+     * "root" is null if every square of the board is zero
+     */
+    private final int rows;
+    private final int columns;
+    private final int depth;
+    private final Node root;
+
+    private PersistentBoard(int rows, int columns, int depth, Node root) {
+        this.rows = rows;
+        this.columns = columns;
+        this.depth = depth;
+        this.root = root;
+    }
+
+    // constructor
+    public PersistentBoard(boolean[][] bombState) {
+        this(toSnapshot(bombState));
+    }
+
+    // constructor based on a snapshot (see Board.snapshot())
+    public PersistentBoard(char[][] snapshot) {
+        this.rows = snapshot.length;
+        this.columns = rows == 0 ? 0 : snapshot[0].length;
+        int depth = 0;
+        while ((CHUNK << depth) < Math.max(rows, columns)) {
+            depth++;
+        }
+        this.depth = depth;
+        final Object edit = new Object();
+        Node root = null;
+        for (int x = 0; x < rows; x++) {
+            for (int y = 0; y < columns; y++) {
+                final int square;
+                switch (snapshot[x][y]) {
+                case '-':
+                    square = 0;
+                    break;
+                case 'b':
+                    square = BOMB;
+                    break;
+                case 'F':
+                    square = FLAGGED;
+                    break;
+                case 'f':
+                    square = FLAGGED | BOMB;
+                    break;
+                case 'D':
+                    square = DUG;
+                    break;
+                default:
+                    throw new IllegalArgumentException("invalid snapshot: " + snapshot[x][y]);
+                }
+                if (square != 0) {
+                    root = set(root, depth, x, y, square, edit);
+                }
+            }
+        }
+        for (int x = 0; x < rows; x++) {
+            for (int y = 0; y < columns; y++) {
+                if ((get(root, depth, x, y) & BOMB) != 0) {
+                    for (int diffx = -1; diffx <= 1; diffx++) {
+                        for (int diffy = -1; diffy <= 1; diffy++) {
+                            final int xcurrent = x + diffx;
+                            final int ycurrent = y + diffy;
+                            if ((diffx != 0 || diffy != 0) && inRange(xcurrent, ycurrent)) {
+                                root = set(root, depth, xcurrent, ycurrent, get(root, depth, xcurrent, ycurrent) + 1, edit);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        this.root = root;
+    }
+
+    private static char[][] toSnapshot(boolean[][] bombState) {
+        char[][] snapshot = new char[bombState.length][];
+        for (int x = 0; x < bombState.length; x++) {
+            snapshot[x] = new char[bombState[x].length];
+            for (int y = 0; y < bombState[x].length; y++) {
+                snapshot[x][y] = bombState[x][y] ? 'b' : '-';
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * A quadtree node: either a leaf holding CHUNK * CHUNK squares, or an inner
+     * node with four (possibly null, i.e. all zero) children.
+     */
+    private static final class Node {
+        private final Node[] children;
+        private final byte[] squares;
+        private final Object edit;
+
+        private Node(Node[] children, byte[] squares, Object edit) {
+            this.children = children;
+            this.squares = squares;
+            this.edit = edit;
+        }
+    }
+
+    private static int get(Node node, int level, int x, int y) {
+        while (node != null && level > 0) {
+            final int bit = level + CHUNK_BITS - 1;
+            node = node.children[((x >> bit) & 1) << 1 | ((y >> bit) & 1)];
+            level--;
+        }
+        if (node == null) {
+            return 0;
+        }
+        return node.squares[(x & (CHUNK - 1)) << CHUNK_BITS | (y & (CHUNK - 1))];
+    }
+
+    /*
+     * @return node, or a copy of it tagged with edit, in which square (x, y) is
+     *         set to value; nodes already tagged with edit are updated in place
+     */
+    private static Node set(Node node, int level, int x, int y, int value, Object edit) {
+        final Node copy;
+        if (node != null && node.edit == edit) {
+            copy = node;
+        } else if (level == 0) {
+            copy = new Node(null, node == null ? new byte[CHUNK * CHUNK] : node.squares.clone(), edit);
+        } else {
+            copy = new Node(node == null ? new Node[4] : node.children.clone(), null, edit);
+        }
+        if (level == 0) {
+            copy.squares[(x & (CHUNK - 1)) << CHUNK_BITS | (y & (CHUNK - 1))] = (byte) value;
+        } else {
+            final int bit = level + CHUNK_BITS - 1;
+            final int child = ((x >> bit) & 1) << 1 | ((y >> bit) & 1);
+            copy.children[child] = set(copy.children[child], level - 1, x, y, value, edit);
+        }
+        return copy;
+    }
+
+    private boolean inRange(int x, int y) {
+        return x >= 0 && y >= 0 && x < rows && y < columns;
+    }
+
+    /**
+     * @param x: horizontal int coordinate
+     * @param y: vertical int coordinate
+     * @return the version after digging (x, y); this version if nothing changed
+     */
+    public PersistentBoard dig(int x, int y) {
+        if (!inRange(x, y) || (get(root, depth, x, y) & (FLAGGED | DUG)) != 0) {
+            return this;
+        }
+        final Object edit = new Object();
+        Node root = this.root;
+        // squares still to dig, as x * columns + y
+        long[] stack = new long[16];
+        int top = 0;
+        stack[top++] = (long) x * columns + y;
+        while (top > 0) {
+            final long next = stack[--top];
+            final int xcurrent = (int) (next / columns);
+            final int ycurrent = (int) (next % columns);
+            int square = get(root, depth, xcurrent, ycurrent);
+            if ((square & (FLAGGED | DUG)) != 0) {
+                continue;
+            }
+            square |= DUG;
+            if ((square & BOMB) != 0) {
+                square &= ~BOMB;
+                for (int diffx = -1; diffx <= 1; diffx++) {
+                    for (int diffy = -1; diffy <= 1; diffy++) {
+                        if ((diffx != 0 || diffy != 0) && inRange(xcurrent + diffx, ycurrent + diffy)) {
+                            root = set(root, depth, xcurrent + diffx, ycurrent + diffy,
+                                    get(root, depth, xcurrent + diffx, ycurrent + diffy) - 1, edit);
+                        }
+                    }
+                }
+            }
+            root = set(root, depth, xcurrent, ycurrent, square, edit);
+            if ((square & COUNT) == 0) {
+                // dig surrounding squares
+                for (int diffx = -1; diffx <= 1; diffx++) {
+                    for (int diffy = -1; diffy <= 1; diffy++) {
+                        if ((diffx != 0 || diffy != 0) && inRange(xcurrent + diffx, ycurrent + diffy)
+                                && (get(root, depth, xcurrent + diffx, ycurrent + diffy) & (FLAGGED | DUG)) == 0) {
+                            if (top == stack.length) {
+                                stack = Arrays.copyOf(stack, top * 2);
+                            }
+                            stack[top++] = (long) (xcurrent + diffx) * columns + ycurrent + diffy;
+                        }
+                    }
+                }
+            }
+        }
+        return new PersistentBoard(rows, columns, depth, root);
+    }
+
+    public PersistentBoard flag(int x, int y) {
+        if (!inRange(x, y) || (get(root, depth, x, y) & (FLAGGED | DUG)) != 0) {
+            return this;
+        }
+        return new PersistentBoard(rows, columns, depth,
+                set(root, depth, x, y, get(root, depth, x, y) | FLAGGED, new Object()));
+    }
+
+    public PersistentBoard deflag(int x, int y) {
+        if (!inRange(x, y) || (get(root, depth, x, y) & FLAGGED) == 0) {
+            return this;
+        }
+        return new PersistentBoard(rows, columns, depth,
+                set(root, depth, x, y, get(root, depth, x, y) & ~FLAGGED, new Object()));
+    }
+
+    /**
+     * @return the state of square (x, y) in the format of Square.snapshot()
+     */
+    public char snapshot(int x, int y) {
+        final int square = get(root, depth, x, y);
+        if ((square & DUG) != 0) {
+            return 'D';
+        } else if ((square & FLAGGED) != 0) {
+            return (square & BOMB) != 0 ? 'f' : 'F';
+        }
+        return (square & BOMB) != 0 ? 'b' : '-';
+    }
+
+    /**
+     * @returns the string representation of the board, in the format of Board.toString()
+     **/
+    public String toString() {
+        StringBuilder output = new StringBuilder();
+        for (int x = 0; x < rows; x++) {
+            for (int y = 0; y < columns; y++) {
+                final int square = get(root, depth, x, y);
+                if ((square & FLAGGED) != 0) {
+                    output.append('F');
+                } else if ((square & DUG) == 0) {
+                    output.append('-');
+                } else if ((square & COUNT) == 0) {
+                    output.append(' ');
+                } else {
+                    output.append(square & COUNT);
+                }
+                output.append(y != columns - 1 ? ' ' : '\n');
+            }
+        }
+        return output.toString();
+    }
+
+    /**
+     * @return the leaves of the quadtree (CHUNK by CHUNK blocks of squares), to be
+     *         compared by identity with those of another version: the leaves two
+     *         versions have in common are shared, not copied
+     */
+    List<Object> leaves() {
+        final List<Object> leaves = new ArrayList<Object>();
+        addLeaves(root, leaves);
+        return leaves;
+    }
+
+    private static void addLeaves(Node node, List<Object> leaves) {
+        if (node == null) {
+            return;
+        }
+        if (node.squares != null) {
+            leaves.add(node);
+            return;
+        }
+        for (Node child : node.children) {
+            addLeaves(child, leaves);
+        }
+    }
+
+    public int rows() {
+        return rows;
+    }
+
+    public int columns() {
+        return columns;
+    }
+}
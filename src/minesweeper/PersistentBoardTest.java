@@ -0,0 +1,175 @@
+package minesweeper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ *
+ * Test Strategy:
+ *
+ * (A) Test that a PersistentBoard plays exactly like a Board
+ *     i. a small board with flags, recursive digging and BOOM
+ *     ii. a random board spanning several quadtree levels
+ * (B) Test that older versions are left unchanged by later moves
+ * (C) Test that a version shares the leaves its move did not change with the
+ *     previous version
+ *     i. a flag copies one leaf
+ *     ii. a dig copies about one leaf per CHUNK * CHUNK squares revealed
+ * (D) Test that a BoardHistory replays, and branches off an earlier version
+ * (E) Test that a BoardHistory rewound in place goes on from the earlier version
+ *
+ */
+
+public class PersistentBoardTest {
+
+    private static final boolean[][] input = { { true, true, false }, { true, false, false },
+            { false, false, false } };
+
+    @Test
+    public void testSameAsBoard() {
+        Board board = new Board(input);
+        PersistentBoard version = new PersistentBoard(input);
+        assertEquals(board.toString(), version.toString());
+        board.flag(1, 2);
+        version = version.flag(1, 2);
+        assertEquals(board.toString(), version.toString());
+        board.dig(2, 2);
+        version = version.dig(2, 2);
+        assertEquals(board.toString(), version.toString());
+        board.deflag(1, 2);
+        version = version.deflag(1, 2);
+        board.dig(0, 0);
+        version = version.dig(0, 0);
+        assertEquals(board.toString(), version.toString());
+    }
+
+    @Test
+    public void testLargeRandomBoard() {
+        Random random = new Random(6005);
+        boolean[][] bombs = new boolean[50][50];
+        for (int x = 0; x < 50; x++) {
+            for (int y = 0; y < 50; y++) {
+                bombs[x][y] = random.nextDouble() < 0.1;
+            }
+        }
+        Board board = new Board(bombs);
+        PersistentBoard version = new PersistentBoard(bombs);
+        for (int move = 0; move < 200; move++) {
+            int x = random.nextInt(50);
+            int y = random.nextInt(50);
+            if (random.nextInt(4) == 0) {
+                board.flag(x, y);
+                version = version.flag(x, y);
+            } else {
+                board.dig(x, y);
+                version = version.dig(x, y);
+            }
+        }
+        assertEquals(board.toString(), version.toString());
+        assertEquals(new PersistentBoard(board.snapshot()).toString(), version.toString());
+    }
+
+    @Test
+    public void testVersionsUnchanged() {
+        PersistentBoard initial = new PersistentBoard(input);
+        PersistentBoard flagged = initial.flag(0, 0);
+        PersistentBoard dug = flagged.dig(2, 2);
+        assertEquals("- - -\n- - -\n- - -\n", initial.toString());
+        assertEquals("F - -\n- - -\n- - -\n", flagged.toString());
+        assertEquals("F - -\n- 3 1\n- 1  \n", dug.toString());
+        // moves changing nothing do not create a version
+        assertSame(dug, dug.flag(2, 2));
+    }
+
+    // @return the number of leaves of after that are not shared with before
+    private static int newLeaves(PersistentBoard before, PersistentBoard after) {
+        final Set<Object> shared = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+        shared.addAll(before.leaves());
+        int copied = 0;
+        for (Object leaf : after.leaves()) {
+            if (!shared.contains(leaf)) {
+                copied++;
+            }
+        }
+        return copied;
+    }
+
+    private static int undug(PersistentBoard version) {
+        final String board = version.toString();
+        return board.length() - board.replace("-", "").length();
+    }
+
+    @Test
+    public void testFlagSharesLeaves() {
+        Random random = new Random(28);
+        boolean[][] bombs = new boolean[256][256];
+        for (int x = 0; x < 256; x++) {
+            for (int y = 0; y < 256; y++) {
+                bombs[x][y] = random.nextDouble() < 0.2;
+            }
+        }
+        PersistentBoard before = new PersistentBoard(bombs);
+        PersistentBoard after = before.flag(100, 200);
+        assertEquals(before.leaves().size(), after.leaves().size());
+        assertEquals(1, newLeaves(before, after));
+        assertEquals(1, newLeaves(after, after.deflag(100, 200)));
+    }
+
+    @Test
+    public void testDigSharesLeaves() {
+        // bombs around the squares [8, 8 + side) x [8, 8 + side), which line up with the leaves
+        final int size = 256;
+        int previous = 0;
+        for (int side = 8; side <= 64; side *= 2) {
+            boolean[][] bombs = new boolean[size][size];
+            for (int i = 7; i <= 8 + side; i++) {
+                bombs[7][i] = bombs[8 + side][i] = bombs[i][7] = bombs[i][8 + side] = true;
+            }
+            PersistentBoard before = new PersistentBoard(bombs);
+            PersistentBoard after = before.dig(8 + side / 2, 8 + side / 2);
+            final int revealed = undug(before) - undug(after);
+            assertEquals(side * side, revealed);
+            // the 8 by 8 leaves inside the ring are copied, or made if they were all zero
+            assertEquals(revealed / 64, newLeaves(before, after));
+            assertTrue(newLeaves(before, after) > previous);
+            previous = newLeaves(before, after);
+        }
+    }
+
+    @Test
+    public void testHistory() {
+        BoardHistory history = new BoardHistory(new PersistentBoard(input));
+        history.flag(0, 0);
+        history.dig(2, 2);
+        assertEquals(2, history.size());
+        assertEquals("dig 2 2", history.move(2));
+        assertEquals("F - -\n- - -\n- - -\n", history.version(1).toString());
+
+        BoardHistory branch = history.branch(1);
+        assertEquals(1, branch.size());
+        assertSame(Square.boomException.message, branch.dig(0, 1));
+        assertEquals("F 2 -\n- - -\n- - -\n", branch.look());
+        assertEquals("F - -\n- 3 1\n- 1  \n", history.look());
+    }
+
+    @Test
+    public void testRewind() {
+        BoardHistory history = new BoardHistory(new PersistentBoard(input));
+        history.flag(0, 0);
+        history.dig(2, 2);
+        assertEquals("F - -\n- - -\n- - -\n", history.rewind(1));
+        assertEquals(1, history.size());
+        history.deflag(0, 0);
+        assertEquals(2, history.size());
+        assertEquals("deflag 0 0", history.move(2));
+        assertEquals("- - -\n- - -\n- - -\n", history.look());
+    }
+}
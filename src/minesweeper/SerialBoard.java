@@ -0,0 +1,230 @@
+package minesweeper;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import minesweeper.Square.boomException;
+
+/**
+ * A SerialBoard runs every mutation of a Board on one dedicated writer thread.
+ *
+ * Client threads never touch the Board: they put their dig, flag or deflag on a
+ * lock-free ring buffer and wait for the writer to hand back the reply. The writer
+ * takes the commands in the order of the ring, up to BATCH at a time, applies them,
+ * renders the board once for the whole batch and publishes that rendering, which
+ * is the reply to every command of the batch (except a BOOM). look returns the
+ * latest published rendering without going through the ring at all.
+ *
+ * So the order in which concurrent commands are applied is the order in which
+ * they claimed their sequence number, and no client thread ever waits on a monitor
+ * held by another one.
+ *
+ * A dig that cascades over a large area is carried out SLICE squares at a time
+ * between two batches (the digs in progress share the SLICE squares), and replied
+ * to when it is over. So a command never waits for more than one batch, SLICE
+ * squares of cascade and one rendering of the board, however large the cascades.
+ *
+ * A command that fails on the writer (an exception from the Board, or an Error
+ * such as running out of memory while rendering) fails on its client thread with
+ * an IllegalStateException, and the writer goes on with the next commands.
+ *
+ * The SerialBoard class is thread safe. The ring is a multi-producer
+ * single-consumer queue: a producer claims a sequence number from "claimed", waits
+ * while the ring is full, stores its command in the slot and then publishes the
+ * sequence number in "published". The writer reads a slot only after seeing its
+ * sequence number published, and frees it by advancing "consumed".
+ */
+
+public class SerialBoard implements Minefield {
+
+    /** Number of slots of the ring; a power of two. */
+    public static final int CAPACITY = 1024;
+    /** Maximum number of commands applied between two renderings of the board. */
+    public static final int BATCH = 64;
+    /** Maximum number of squares dug by cascades between two batches. */
+    public static final int SLICE = Board.SLICE;
+
+    private static final int MASK = CAPACITY - 1;
+    private static final int DIG = 0, FLAG = 1, DEFLAG = 2;
+
+    private final Board board;
+    private final Command[] ring = new Command[CAPACITY];
+    private final AtomicLongArray published = new AtomicLongArray(CAPACITY);
+    private final AtomicLong claimed = new AtomicLong();
+    private volatile long consumed = 0;
+    private volatile boolean sleeping = false;
+    private volatile String snapshot;
+    private final Thread writer;
+
+    /*
+     * a client thread waits for the reply to its command before sending the
+     * next one, so each thread can reuse a single Command
+     */
+    private final ThreadLocal<Command> commands = new ThreadLocal<Command>() {
+        protected Command initialValue() {
+            return new Command();
+        }
+    };
+
+    private static final class Command {
+        private int operation, x, y;
+        private Thread client;
+        private Board.Dig dig; // for a dig, while the writer carries it out
+        private Throwable failure; // written before reply
+        private volatile String reply;
+    }
+
+    /**
+     * Start the writer thread of board. From now on, board must only be used
+     * through this SerialBoard.
+     */
+    public SerialBoard(Board board) {
+        this.board = board;
+        this.snapshot = board.toString();
+        for (int i = 0; i < CAPACITY; i++) {
+            published.set(i, -1);
+        }
+        this.writer = new Thread("board writer") {
+            public void run() {
+                write();
+            }
+        };
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    private String submit(int operation, int x, int y) {
+        final Command command = commands.get();
+        command.operation = operation;
+        command.x = x;
+        command.y = y;
+        command.client = Thread.currentThread();
+        command.failure = null;
+        command.reply = null;
+        final long sequence = claimed.getAndIncrement();
+        while (sequence - consumed >= CAPACITY) {
+            // the ring is full: let the writer catch up
+            Thread.yield();
+        }
+        ring[(int) (sequence & MASK)] = command;
+        published.set((int) (sequence & MASK), sequence);
+        if (sleeping) {
+            LockSupport.unpark(writer);
+        }
+        String reply;
+        while ((reply = command.reply) == null) {
+            LockSupport.park(this);
+        }
+        if (command.failure != null) {
+            throw new IllegalStateException("board writer failed", command.failure);
+        }
+        return reply;
+    }
+
+    /*
+     * the writer thread: apply the published commands in order, BATCH at a time,
+     * and move the cascades of the digs in progress forward by SLICE squares in all
+     * between two batches
+     */
+    private void write() {
+        final Command[] batch = new Command[BATCH];
+        final ArrayDeque<Command> digging = new ArrayDeque<Command>();
+        final List<Command> done = new ArrayList<Command>();
+        long next = 0;
+        while (true) {
+            int size = 0;
+            while (size < BATCH && published.get((int) ((next + size) & MASK)) == next + size) {
+                batch[size] = ring[(int) ((next + size) & MASK)];
+                size++;
+            }
+            if (size == 0 && digging.isEmpty()) {
+                sleeping = true;
+                if (published.get((int) (next & MASK)) != next) {
+                    LockSupport.park(this);
+                }
+                sleeping = false;
+                continue;
+            }
+            for (int i = 0; i < size; i++) {
+                final Command command = batch[i];
+                batch[i] = null;
+                try {
+                    if (command.operation == DIG) {
+                        command.dig = board.startDig(command.x, command.y);
+                        digging.add(command);
+                    } else {
+                        if (command.operation == FLAG) {
+                            board.flagSquare(command.x, command.y);
+                        } else {
+                            board.deflagSquare(command.x, command.y);
+                        }
+                        done.add(command);
+                    }
+                } catch (Throwable failure) {
+                    command.failure = failure;
+                    done.add(command);
+                }
+            }
+            next += size;
+            consumed = next;
+            final int share = Math.max(1, SLICE / Math.max(1, digging.size()));
+            for (int i = digging.size(); i > 0; i--) {
+                final Command command = digging.poll();
+                try {
+                    if (command.dig.step(share)) {
+                        digging.add(command);
+                        continue;
+                    }
+                } catch (Throwable failure) {
+                    command.failure = failure;
+                }
+                done.add(command);
+            }
+            if (done.isEmpty()) {
+                // only cascades in progress: nobody to reply to, and no need to render yet
+                continue;
+            }
+            String rendering;
+            try {
+                rendering = board.toString();
+                snapshot = rendering;
+            } catch (Throwable failure) {
+                rendering = null;
+                for (Command command : done) {
+                    command.failure = failure;
+                }
+            }
+            for (Command command : done) {
+                final Thread client = command.client;
+                if (command.failure != null) {
+                    command.reply = "";
+                } else {
+                    command.reply = command.dig != null && command.dig.boom() ? boomException.message : rendering;
+                }
+                command.dig = null;
+                LockSupport.unpark(client);
+            }
+            done.clear();
+        }
+    }
+
+    public String dig(int x, int y) {
+        return submit(DIG, x, y);
+    }
+
+    public String flag(int x, int y) {
+        return submit(FLAG, x, y);
+    }
+
+    public String deflag(int x, int y) {
+        return submit(DEFLAG, x, y);
+    }
+
+    public String look() {
+        return snapshot;
+    }
+}
@@ -0,0 +1,83 @@
+package minesweeper;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * SerialBoardBenchmark compares the throughput of a Board played directly (the
+ * synchronized model: every client thread mutates the squares and renders the
+ * board itself) with the same Board played through a SerialBoard.
+ *
+ * PLAYERS threads each send commands to a SIZE x SIZE board without bombs for
+ * DURATION milliseconds: a look with probability LOOK percent, otherwise a flag or
+ * a deflag of a random square. Reported is the number of commands completed per
+ * second by all the players together, once for each model.
+ *
+ * The comparison is of the two models as a server would use them, so it is not
+ * the same work per command: a look on the SerialBoard returns the last board the
+ * writer rendered, while a look on the Board renders it again, and the writer
+ * renders once for a whole batch of mutations, while each mutation on the Board
+ * renders the board for its own reply. With LOOK = 0 every reply in both models
+ * is a rendering made after the command was applied.
+ *
+ * Usage: SerialBoardBenchmark [SIZE [DURATION [LOOK [PLAYERS+]]]]
+ * defaults: 100 1500 70 1 4 16 64
+ */
+
+public class SerialBoardBenchmark {
+
+    public static void main(String[] args) throws InterruptedException {
+        final int size = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        final long duration = args.length > 1 ? Long.parseLong(args[1]) : 1500;
+        final int look = args.length > 2 ? Integer.parseInt(args[2]) : 70;
+        int[] players = { 1, 4, 16, 64 };
+        if (args.length > 3) {
+            players = new int[args.length - 3];
+            for (int i = 3; i < args.length; i++) {
+                players[i - 3] = Integer.parseInt(args[i]);
+            }
+        }
+        System.out.println(size + "x" + size + " board, " + look + "% look, " + duration
+                + " ms per point; commands per second, all players together");
+        System.out.println("players  Board  SerialBoard");
+        for (int count : players) {
+            final long direct = run(new Board(new boolean[size][size]), size, count, duration, look);
+            final long serial = run(new SerialBoard(new Board(new boolean[size][size])), size, count, duration, look);
+            System.out.println(String.format("%-8d %-6d %d", count, direct, serial));
+        }
+    }
+
+    private static long run(final Minefield board, final int size, int players, long duration, final int look)
+            throws InterruptedException {
+        final AtomicLong commands = new AtomicLong();
+        final long end = System.nanoTime() + duration * 1000000;
+        Thread[] threads = new Thread[players];
+        for (int i = 0; i < players; i++) {
+            final Random random = new Random(i);
+            threads[i] = new Thread() {
+                public void run() {
+                    long count = 0;
+                    while (System.nanoTime() < end) {
+                        final int command = random.nextInt(100);
+                        final int x = random.nextInt(size);
+                        final int y = random.nextInt(size);
+                        if (command < look) {
+                            board.look();
+                        } else if (command % 2 == 0) {
+                            board.flag(x, y);
+                        } else {
+                            board.deflag(x, y);
+                        }
+                        count++;
+                    }
+                    commands.addAndGet(count);
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return commands.get() * 1000 / duration;
+    }
+}
@@ -0,0 +1,105 @@
+package minesweeper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import minesweeper.Square.boomException;
+
+import org.junit.Test;
+
+/**
+ *
+ * Test Strategy:
+ *
+ * (A) Test that commands from a single client get the same replies as on a Board
+ *     i. dig, recursive digging and BOOM
+ *     ii. flag and deflag
+ *     iii. look reflects the last command
+ * (B) Test that no command from concurrent clients is lost: each command
+ *     changes a square no other command touches, its reply shows the change,
+ *     and the final board shows all of them (more commands than CAPACITY)
+ * (C) Test that a command failing on the writer fails on its client, and that
+ *     the writer goes on with the next commands
+ *
+ */
+
+public class SerialBoardTest {
+
+    @Test
+    public void testSameAsBoard() {
+        Board board = new Board("src/minesweeper/server/goodBoard.txt");
+        SerialBoard serial = new SerialBoard(new Board("src/minesweeper/server/goodBoard.txt"));
+        assertEquals(board.toString(), serial.look());
+        assertEquals(board.dig(4, 0), serial.dig(4, 0));
+        assertEquals(board.flag(0, 0), serial.flag(0, 0));
+        assertEquals(board.dig(0, 0), serial.dig(0, 0));
+        assertSame(boomException.message, serial.dig(0, 1));
+        board.dig(0, 1);
+        assertEquals(board.deflag(0, 0), serial.deflag(0, 0));
+        assertEquals(board.toString(), serial.look());
+    }
+
+    @Test
+    public void testConcurrentClients() throws InterruptedException {
+        final int size = 48;
+        final SerialBoard serial = new SerialBoard(new Board(new boolean[size][size]));
+        final String[] errors = new String[size];
+        Thread[] clients = new Thread[size];
+        for (int i = 0; i < size; i++) {
+            final int x = i;
+            clients[i] = new Thread() {
+                public void run() {
+                    // flag every square of row x once, then deflag one square in two
+                    for (int y = 0; y < size; y++) {
+                        if (serial.flag(x, y).charAt(x * 2 * size + 2 * y) != 'F') {
+                            errors[x] = "flag " + x + " " + y;
+                        }
+                    }
+                    for (int y = 1; y < size; y += 2) {
+                        if (serial.deflag(x, y).charAt(x * 2 * size + 2 * y) != '-') {
+                            errors[x] = "deflag " + x + " " + y;
+                        }
+                    }
+                }
+            };
+            clients[i].start();
+        }
+        for (Thread client : clients) {
+            client.join();
+        }
+        for (String error : errors) {
+            assertNull(error);
+        }
+        assertTrue(size * size * 3 / 2 > SerialBoard.CAPACITY);
+        StringBuilder expected = new StringBuilder();
+        for (int x = 0; x < size; x++) {
+            for (int y = 0; y < size; y++) {
+                expected.append(y % 2 == 0 ? 'F' : '-').append(y != size - 1 ? ' ' : '\n');
+            }
+        }
+        assertEquals(expected.toString(), serial.look());
+    }
+
+    @Test
+    public void testWriterFailure() {
+        SerialBoard serial = new SerialBoard(new Board(new boolean[3][3]) {
+            public void flagSquare(int x, int y) {
+                if (x == 1) {
+                    throw new IllegalArgumentException("broken square");
+                }
+                super.flagSquare(x, y);
+            }
+        });
+        try {
+            serial.flag(1, 1);
+            fail("expected the writer's failure");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getCause() instanceof IllegalArgumentException);
+        }
+        assertEquals("F - -\n- - -\n- - -\n", serial.flag(0, 0));
+        assertEquals("F - -\n- - -\n- - -\n", serial.look());
+    }
+}
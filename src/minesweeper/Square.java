@@ -1,13 +1,16 @@
 package minesweeper;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 /**
  * 
  * The Square class is thread safe. 
  * Fields objects (state, hasBomb, proximal, numBomb) are all private;
- * All the mutator methods are synchronized
+ * All the mutator methods are synchronized, except dig, which only ever holds
+ * the lock of the one square it is digging (see digOne)
  * 
  */
 
@@ -33,6 +36,28 @@ public class Square {
 		this.hasBomb = bombState;
 	}
 
+	/**
+	 * rebuild a square from the character returned by snapshot()
+	 */
+	public Square(char snapshot) {
+		switch (snapshot) {
+		case '-':
+		case 'b':
+			this.state = State.untouched;
+			break;
+		case 'F':
+		case 'f':
+			this.state = State.flagged;
+			break;
+		case 'D':
+			this.state = State.dug;
+			break;
+		default:
+			throw new IllegalArgumentException("invalid snapshot: " + snapshot);
+		}
+		this.hasBomb = snapshot == 'b' || snapshot == 'f';
+	}
+
 
 	public synchronized boolean isBomb() {
 		return hasBomb;
@@ -51,29 +76,72 @@ public class Square {
 		}
 	}
 
-	public synchronized void dig() throws boomException {
+	/** digOne() result bit: a bomb was dug */
+	static final int BOOM = 1;
+	/** digOne() result bit: there is no bomb around the square just dug, its neighbors must be dug too */
+	static final int CASCADE = 2;
+	/** digOne() result bit: the square was untouched, and is now dug */
+	static final int DUG = 4;
 
-		if (state == State.untouched) {
-			boolean badState = false;
-			state = State.dug;
-			if (hasBomb) {
-				hasBomb = false;
-				for (Square sq : proximal) {
-					sq.decreaseBomb();
+	/**
+	 * dig this square and, if there is no bomb around it, the surrounding
+	 * squares, recursively
+	 * 
+	 * the cascade is carried out with a work list rather than by recursion, and
+	 * no lock is held from one square to the next, so that a cascade over a large
+	 * board neither overflows the stack nor blocks the other players
+	 */
+	public void dig() throws boomException {
+		final int result = digOne();
+		if ((result & CASCADE) != 0) {
+			final ArrayDeque<Square> cascade = new ArrayDeque<Square>();
+			addUndug(cascade);
+			while (!cascade.isEmpty()) {
+				final Square square = cascade.poll();
+				if ((square.digOne() & CASCADE) != 0) {
+					square.addUndug(cascade);
 				}
-				badState = true;
-
 			}
-			if (numBomb == 0) {
-				for (Square sq : proximal) {
-					// dig surrounding squares recursively
-					sq.dig();
-				}
+		}
+		if ((result & BOOM) != 0) {
+			// for modularity, always throw boomException without any knowledge of DEBUG flag (true or false)
+			throw new boomException();
+		}
+	}
 
+	/**
+	 * dig this square only; the caller is in charge of the cascade
+	 * 
+	 * @return DUG, plus BOOM and/or CASCADE, or 0 if the square was not untouched
+	 */
+	int digOne() {
+		final boolean badState;
+		synchronized (this) {
+			if (state != State.untouched) {
+				return 0;
 			}
-			if (badState) {
-				// for modularity, always throw boomException without any knowledge of DEBUG flag (true or false)
-				throw new boomException();
+			state = State.dug;
+			badState = hasBomb;
+			hasBomb = false;
+		}
+		if (badState) {
+			// outside of this square's lock: two neighboring bombs may be dug at once
+			for (int i = 0; i < proximal.size(); i++) {
+				proximal.get(i).decreaseBomb();
+			}
+		}
+		synchronized (this) {
+			return DUG | (badState ? BOOM : 0) | (numBomb == 0 ? CASCADE : 0);
+		}
+	}
+
+	/**
+	 * add the surrounding squares that are not dug yet to cascade
+	 */
+	void addUndug(Collection<Square> cascade) {
+		for (int i = 0; i < proximal.size(); i++) {
+			if (!proximal.get(i).isDug()) {
+				cascade.add(proximal.get(i));
 			}
 		}
 	}
@@ -84,10 +152,30 @@ public class Square {
 	 * 
 	 * @modify the field numBomb of the class Square
 	 */
-	private synchronized void decreaseBomb() {
+	synchronized void decreaseBomb() {
 		numBomb--;
 	}
 
+	/**
+	 * called on a copy of a square owned by another BoardTile after the owner
+	 * reports that the bomb in it has been dug; the caller is responsible for
+	 * decreasing the bomb numbers of the squares that surround the copy
+	 * 
+	 * @return true if the square held a bomb before this call
+	 */
+	synchronized boolean defuse() {
+		if (!hasBomb) {
+			return false;
+		}
+		hasBomb = false;
+		state = State.dug;
+		return true;
+	}
+
+	public synchronized boolean isDug() {
+		return state == State.dug;
+	}
+
 	// add a new square to the adjacency list of the square currently being explored
 	public synchronized void addAdjacent(Square square) {
 		proximal.add(square);
@@ -96,6 +184,22 @@ public class Square {
 		}
 	};
 
+	/**
+	 * same as toString(), without allocating a String
+	 * 
+	 * @return 'F', '-', ' ' or the digit of numBomb
+	 */
+	public synchronized char symbol() {
+		switch (state) {
+		case flagged:
+			return 'F';
+		case untouched:
+			return '-';
+		default:
+			return numBomb == 0 ? ' ' : (char) ('0' + numBomb);
+		}
+	}
+
 	@Override
 	public synchronized String toString() {
 		switch (state) {
@@ -115,6 +219,24 @@ public class Square {
 		}
 	}
 
+	/**
+	 * numBomb is left out: it is recomputed by addAdjacent from the bombs
+	 * still in the neighboring squares, which is what dig keeps it equal to
+	 * 
+	 * @return one character holding both the state and the bomb of the square:
+	 * '-' / 'b' untouched, 'F' / 'f' flagged (without / with a bomb), 'D' dug
+	 */
+	public synchronized char snapshot() {
+		switch (state) {
+		case untouched:
+			return hasBomb ? 'b' : '-';
+		case flagged:
+			return hasBomb ? 'f' : 'F';
+		default:
+			return 'D';
+		}
+	}
+
 	/** 
 	 * 
 	 * @return the string representation of the actual bomb state of a 1-by-1 square
@@ -137,6 +259,11 @@ public class Square {
 	public static class boomException extends Exception {
 		public static String message = "BOOM!\n";
 
+		public boomException() {
+			// only used for control flow: no stack trace to fill in
+			super(message, null, false, false);
+		}
+
 		public final String message() {
 			return message;
 		}
@@ -0,0 +1,180 @@
+package minesweeper.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import minesweeper.Board;
+
+import org.junit.Test;
+
+/**
+ *
+ * Allocation regression tests for the command path: a Board driven through
+ * MinesweeperServerThread.handleRequest by long command sequences.
+ *
+ * Test Strategy:
+ *
+ * (A) After a warm-up on other boards, the bytes allocated per command,
+ *     averaged over a sequence of commands that each change a fresh board,
+ *     stay within the budget for each of
+ *     i. look
+ *     ii. dig of untouched squares only, until the whole board is dug
+ *         (so including BOOMs and cascades)
+ *     iii. flag of every square
+ *     iv. deflag of every square, all flagged beforehand
+ *
+ * The boards are seeded. The budget is the reply itself (the rendered board,
+ * one byte per character) plus SLACK bytes: parsing and rendering must not
+ * allocate anything else. The tests pass trivially on JVMs that cannot count
+ * allocated bytes per thread.
+ *
+ */
+
+public class CommandAllocationTest {
+
+    private static final int SIZE = 40;
+    private static final int WARMUP = 20;
+    private static final long SEED = 6005;
+    private static final long SLACK = 256;
+
+    /*
+     * @return the average number of bytes allocated by the current thread per
+     *         command, over the commands of plan(verb, SEED)
+     */
+    private static long allocatedPerCommand(String verb) throws Exception {
+        final com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!threads.isThreadAllocatedMemorySupported() || !threads.isThreadAllocatedMemoryEnabled()) {
+            return 0;
+        }
+        final long thread = Thread.currentThread().getId();
+
+        final PrintStream stdout = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            for (int round = 0; round < WARMUP; round++) {
+                final MinesweeperServerThread handler = new MinesweeperServerThread(null, null, prepare(verb, round), true);
+                for (String command : plan(verb, round)) {
+                    handler.handleRequest(command);
+                }
+            }
+            final Board board = prepare(verb, SEED);
+            final MinesweeperServerThread handler = new MinesweeperServerThread(null, null, board, true);
+            final String[] measured = plan(verb, SEED);
+            final long before = threads.getThreadAllocatedBytes(thread);
+            final long overhead = threads.getThreadAllocatedBytes(thread) - before;
+            final long start = threads.getThreadAllocatedBytes(thread);
+            for (String command : measured) {
+                handler.handleRequest(command);
+            }
+            final long allocated = threads.getThreadAllocatedBytes(thread) - start - overhead;
+            // every measured command did change the board
+            if (verb.equals("dig") || verb.equals("flag")) {
+                assertEquals(-1, board.look().indexOf('-'));
+            } else if (verb.equals("deflag")) {
+                assertEquals(-1, board.look().indexOf('F'));
+            }
+            return allocated / measured.length;
+        } finally {
+            System.setOut(stdout);
+        }
+    }
+
+    private static boolean[][] bombs(long seed) {
+        final Random random = new Random(seed);
+        final boolean[][] bombs = new boolean[SIZE][SIZE];
+        for (int x = 0; x < SIZE; x++) {
+            for (int y = 0; y < SIZE; y++) {
+                bombs[x][y] = random.nextDouble() < 0.2;
+            }
+        }
+        return bombs;
+    }
+
+    // @return the board the commands of plan(verb, seed) are played on
+    private static Board prepare(String verb, long seed) {
+        final Board board = new Board(bombs(seed));
+        if (verb.equals("deflag")) {
+            for (int x = 0; x < SIZE; x++) {
+                for (int y = 0; y < SIZE; y++) {
+                    board.flag(x, y);
+                }
+            }
+        }
+        return board;
+    }
+
+    /*
+     * @return commands "verb X Y" (or "look") each changing the board of
+     *         prepare(verb, seed), in random order
+     */
+    private static String[] plan(String verb, long seed) {
+        final Random random = new Random(seed);
+        final List<String> commands = new ArrayList<String>();
+        if (verb.equals("dig")) {
+            // pick untouched squares on a twin of the board, until it is all dug
+            final Board twin = prepare(verb, seed);
+            final List<int[]> untouched = new ArrayList<int[]>();
+            while (true) {
+                final char[][] snapshot = twin.snapshot();
+                untouched.clear();
+                for (int x = 0; x < SIZE; x++) {
+                    for (int y = 0; y < SIZE; y++) {
+                        if (snapshot[x][y] == '-' || snapshot[x][y] == 'b') {
+                            untouched.add(new int[] { x, y });
+                        }
+                    }
+                }
+                if (untouched.isEmpty()) {
+                    break;
+                }
+                final int[] square = untouched.get(random.nextInt(untouched.size()));
+                twin.dig(square[0], square[1]);
+                commands.add("dig " + square[0] + " " + square[1]);
+            }
+        } else {
+            for (int x = 0; x < SIZE; x++) {
+                for (int y = 0; y < SIZE; y++) {
+                    commands.add(verb.equals("look") ? "look" : verb + " " + x + " " + y);
+                }
+            }
+            Collections.shuffle(commands, random);
+        }
+        return commands.toArray(new String[commands.size()]);
+    }
+
+    private static void assertWithinBudget(String verb) throws Exception {
+        final long budget = 2 * SIZE * SIZE + SLACK;
+        final long allocated = allocatedPerCommand(verb);
+        assertTrue(verb + " allocated " + allocated + " bytes per command, budget is " + budget,
+                allocated <= budget);
+    }
+
+    @Test
+    public void testLook() throws Exception {
+        assertWithinBudget("look");
+    }
+
+    @Test
+    public void testDig() throws Exception {
+        assertWithinBudget("dig");
+    }
+
+    @Test
+    public void testFlag() throws Exception {
+        assertWithinBudget("flag");
+    }
+
+    @Test
+    public void testDeflag() throws Exception {
+        assertWithinBudget("deflag");
+    }
+}
@@ -0,0 +1,106 @@
+package minesweeper.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import minesweeper.Board;
+
+/**
+ * CompressionBenchmark measures the COMPRESS option of MinesweeperServerThread
+ * in-process, without sockets: a sequence of replies is written through the same
+ * PrintWriter / DeflaterOutputStream (sync flushed, one Deflater per connection)
+ * as the server uses, and the compressed bytes of each reply are counted.
+ *
+ * For each board size, a board with 25% bombs (seeded) has about 5% of its
+ * squares dug, then RESPONSES replies are written: a look, with a flag every
+ * FLAG_EVERY replies so that the board keeps changing. Reported per size:
+ *
+ *   raw/resp     bytes of one uncompressed reply
+ *   first resp   compressed bytes of the first reply
+ *   steady/resp  mean compressed bytes of the other replies
+ *   CPU/resp     mean thread CPU time spent compressing one reply, in
+ *                microseconds (rendering the board is not included)
+ *
+ * Usage: CompressionBenchmark [LEVEL [SIZE+]]
+ * LEVEL is a Deflater level (default Deflater.DEFAULT_COMPRESSION), and the sizes
+ * default to 10 50 100 300.
+ */
+
+public class CompressionBenchmark {
+
+    private static final int RESPONSES = 200;
+    private static final int FLAG_EVERY = 10;
+    private static final double DUG = 0.05;
+
+    public static void main(String[] args) throws IOException {
+        final int level = args.length > 0 ? Integer.parseInt(args[0]) : Deflater.DEFAULT_COMPRESSION;
+        int[] sizes = { 10, 50, 100, 300 };
+        if (args.length > 1) {
+            sizes = new int[args.length - 1];
+            for (int i = 1; i < args.length; i++) {
+                sizes[i - 1] = Integer.parseInt(args[i]);
+            }
+        }
+        for (int size : sizes) {
+            // warm-up, so that CPU/resp is not JIT compilation
+            measure(size, level);
+        }
+        System.out.println("size  raw/resp  first resp  steady/resp  CPU/resp");
+        for (int size : sizes) {
+            System.out.println(measure(size, level));
+        }
+    }
+
+    private static String measure(int size, int level) throws IOException {
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        final Random random = new Random(29);
+        final boolean[][] bombs = new boolean[size][size];
+        for (int x = 0; x < size; x++) {
+            for (int y = 0; y < size; y++) {
+                bombs[x][y] = random.nextDouble() < 0.25;
+            }
+        }
+        final Board board = new Board(bombs);
+        for (int dug = 0; dug < DUG * size * size;) {
+            final int x = random.nextInt(size);
+            final int y = random.nextInt(size);
+            if (!bombs[x][y]) {
+                // the squares neither untouched nor flagged
+                dug = size * size;
+                for (char c : board.dig(x, y).toCharArray()) {
+                    if (c == '-' || c == 'F') {
+                        dug--;
+                    }
+                }
+            }
+        }
+
+        final ByteArrayOutputStream wire = new ByteArrayOutputStream();
+        final Deflater deflater = new Deflater(level);
+        final PrintWriter out = new PrintWriter(new DeflaterOutputStream(wire, deflater, 8192, true), true);
+        long raw = 0, first = 0, steady = 0, cpu = 0;
+        for (int i = 0; i < RESPONSES; i++) {
+            final String reply = i % FLAG_EVERY == FLAG_EVERY - 1
+                    ? board.flag(random.nextInt(size), random.nextInt(size)) : board.look();
+            wire.reset();
+            final long start = threads.getCurrentThreadCpuTime();
+            out.println(reply);
+            cpu += threads.getCurrentThreadCpuTime() - start;
+            raw = reply.length() + 1;
+            if (i == 0) {
+                first = wire.size();
+            } else {
+                steady += wire.size();
+            }
+        }
+        deflater.end();
+        return String.format("%-5d %-9s %-11s %-12s %d us", size, raw + " B", first + " B",
+                steady / (RESPONSES - 1) + " B", cpu / RESPONSES / 1000);
+    }
+}
@@ -4,8 +4,18 @@ import java.io.File;
 import java.io.IOException;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import minesweeper.Board;
+import minesweeper.BoardHistory;
+import minesweeper.LargeBoard;
+import minesweeper.Minefield;
+import minesweeper.PersistentBoard;
+import minesweeper.SerialBoard;
 
 /**
  * 
@@ -14,6 +24,8 @@ import minesweeper.Board;
  * The threads in the system are:
  * 1. main thread accepting new connection.
  * 2. one thread (namely, MinesweeperSeverThread) per connected client, handling that client only.
+ * 3. if an idle timeout is set, one reaper thread closing the connections idle for longer than that;
+ *    the clients' threads need no timer of their own.
  * 
  * The serverSocket object is confined to the main thread.
  * 
@@ -22,7 +34,9 @@ import minesweeper.Board;
  * 
  * All fields are private without representation exposure.
  * The references to 'board' and 'debug' are locked by "private final" condition
- * The mutable numPlayers is mutated via synchronized methods to shield race conditions
+ * The mutable set of connected players is only accessed via synchronized methods to shield race
+ * conditions; the number of players is its size, so that a connection is counted exactly from
+ * addPlayer to removePlayer, however it ends.
  *
  */
 
@@ -30,32 +44,53 @@ public class MinesweeperServer {
 	
 	//default port at 4444
     private ServerSocket serverSocket;
-    private int numPlayers;
-    private final Board board;
+    private final Set<MinesweeperServerThread> players = new HashSet<MinesweeperServerThread>();
+    private final Minefield board;
     /** False if the server should disconnect a client after a BOOM message. */
     private final boolean debug;
+    /** Milliseconds a client may stay silent before it is disconnected, 0 for ever. */
+    private final long idleTimeout;
 
     /**
      * Make a MinesweeperServer that listens for connections on port.
      * @param port port number, requires 0 <= port <= 65535.
      */
-    public MinesweeperServer(int port, boolean debug, Board board) throws IOException {
+    public MinesweeperServer(int port, boolean debug, Minefield board) throws IOException {
+        this(port, debug, board, 0);
+    }
+
+    /**
+     * Make a MinesweeperServer that listens for connections on port, and disconnects
+     * the clients that send nothing for idleTimeout milliseconds (0 for never).
+     * Clients with nothing to send may keep their connection alive with 'ping'.
+     */
+    public MinesweeperServer(int port, boolean debug, Minefield board, long idleTimeout) throws IOException {
         serverSocket = new ServerSocket(port);
         this.debug = debug;
-        this.numPlayers = 0; //(initialize num of players to 0)
         this.board = board;
+        this.idleTimeout = idleTimeout;
     }
     
-    public synchronized void increaseNumPlayers(){
-        this.numPlayers++;
+    public synchronized void addPlayer(MinesweeperServerThread player){
+        players.add(player);
     }
     
-    public synchronized void decreaseNumPlayers(){
-        this.numPlayers--;
+    public synchronized void removePlayer(MinesweeperServerThread player){
+        players.remove(player);
     }
     
+    /**
+     * @return the number of clients connected right now
+     */
     public synchronized int getNumPlayers() {
-        return numPlayers;
+        return players.size();
+    }
+
+    /**
+     * @return the port the server listens on (useful when it was made with port 0)
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
     }
     
 
@@ -66,9 +101,20 @@ public class MinesweeperServer {
      * (IOExceptions from individual clients do *not* terminate serve()).
      */
     public void serve() throws IOException {
+        if (idleTimeout > 0) {
+            Thread reaper = new Thread("connection reaper") {
+                public void run() {
+                    reap();
+                }
+            };
+            reaper.setDaemon(true);
+            reaper.start();
+        }
         while (true) {
             // block until a client connects
             Socket socket = serverSocket.accept();
+            // let the OS notice peers that vanished without closing the connection
+            socket.setKeepAlive(true);
 
             // handle the client, see MinesweeperSeverThread.java for thread implementation
             MinesweeperServerThread thread = new MinesweeperServerThread(this, socket, board, debug);
@@ -77,6 +123,40 @@ public class MinesweeperServer {
     }
 
 
+    /*
+     * the reaper thread: every idleTimeout / 2, close the connections that have been
+     * idle for longer than idleTimeout. The client's thread then fails out of its
+     * blocking read and ends as if the client had disconnected.
+     */
+    private void reap() {
+        final long timeout = TimeUnit.MILLISECONDS.toNanos(idleTimeout);
+        final List<MinesweeperServerThread> idle = new ArrayList<MinesweeperServerThread>();
+        while (true) {
+            try {
+                Thread.sleep(Math.max(idleTimeout / 2, 1));
+            } catch (InterruptedException e) {
+                return;
+            }
+            final long now = System.nanoTime();
+            synchronized (this) {
+                for (MinesweeperServerThread player : players) {
+                    if (player.idleNanos(now) > timeout) {
+                        idle.add(player);
+                    }
+                }
+                players.removeAll(idle);
+            }
+            if (!idle.isEmpty()) {
+                for (MinesweeperServerThread player : idle) {
+                    player.reap();
+                }
+                System.out.println("disconnected " + idle.size() + " idle client(s), " + getNumPlayers() + " playing");
+                idle.clear();
+            }
+        }
+    }
+
+
     // Note on Template Modification
     // handleConnection & handleRequest in the original template have been relocated to @MinesweeperServerThread.java
     
@@ -181,15 +261,40 @@ public class MinesweeperServer {
      * @param file If this argument is not null, start with a board loaded from the specified file,
      *        according to the input file format defined in the JavaDoc for main().
      * @param port The network port on which the server should listen.
+     * 
+     * The board is kept on the Java heap (see Board), unless one of these system properties is set:
+     * minesweeper.offheap=true keeps it in direct memory, and minesweeper.mapfile=PATH in a file
+     * mapped into memory (see LargeBoard). An existing map file is reopened as it was left, unless
+     * a FILE is given; delete it to start over with a new random board.
+     * 
+     * With minesweeper.serial=true, a heap Board is played through a SerialBoard: one writer thread
+     * applies all mutations, and 'look' is served from the board it last rendered.
+     * 
+     * With minesweeper.history=true, a heap board is played through a BoardHistory, which keeps every
+     * version of the board; clients on the server's own host may then replay and rewind the game
+     * (see MinesweeperServerThread.handleRequest).
+     * 
+     * With minesweeper.idletimeout=SECONDS, clients that send nothing for that long are disconnected
+     * (see MinesweeperServer(int, boolean, Minefield, long)); by default they never are.
      */
     public static void runMinesweeperServer(boolean debug, File file, Integer size, int port)
             throws IOException
     {
 
-        Board board=null;
+        Minefield board=null;
+        String mapProp = System.getProperty("minesweeper.mapfile");
+        File map = mapProp == null ? null : new File(mapProp);
         
         // sanity check: either file or size should be null!
-        if (file!=null){
+        if (map!=null || Boolean.parseBoolean(System.getProperty("minesweeper.offheap"))){
+            if (file!=null){
+                board=new LargeBoard(file.getPath(), map);
+            }else if(map!=null && map.exists()){
+                board=new LargeBoard(map);
+            }else{
+                board=new LargeBoard(size!=null ? size : 10, size!=null ? size : 10, map);
+            }
+        }else if (file!=null){
             String destination=file.getPath(); 
             board=new Board(destination);
         }else if(size!=null){
@@ -198,7 +303,15 @@ public class MinesweeperServer {
         else{// generate random 10-by-10 board
             board=new Board(10);
         }
-        MinesweeperServer server = new MinesweeperServer(port, debug, board);
+        if (board instanceof Board && Boolean.parseBoolean(System.getProperty("minesweeper.history"))){
+            board=new BoardHistory(new PersistentBoard(((Board) board).snapshot()));
+        }
+        if (board instanceof Board && Boolean.parseBoolean(System.getProperty("minesweeper.serial"))){
+            board=new SerialBoard((Board) board);
+        }
+        String idleProp = System.getProperty("minesweeper.idletimeout");
+        long idleTimeout = idleProp == null ? 0 : TimeUnit.SECONDS.toMillis(Long.parseLong(idleProp));
+        MinesweeperServer server = new MinesweeperServer(port, debug, board, idleTimeout);
         server.serve();
     }
 }
@@ -0,0 +1,227 @@
+package minesweeper.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.zip.InflaterInputStream;
+
+import minesweeper.Board;
+import minesweeper.BoardHistory;
+import minesweeper.Minefield;
+import minesweeper.PersistentBoard;
+
+import org.junit.Test;
+
+/**
+ *
+ * Test Strategy:
+ *
+ * (A) Test that a client answering 'ping' gets 'pong'
+ * (B) Test that a silent client is disconnected once the idle timeout is over,
+ *     and is no longer counted as a player
+ * (C) Test that a client sending heartbeats more often than the idle timeout
+ *     stays connected
+ * (D) Test that a local client can replay and rewind a game kept in a
+ *     BoardHistory
+ * (E) Test that a client opening with 'compress' gets it echoed, then every
+ *     reply on one deflate stream, each reply inflating to what an
+ *     uncompressed client would get
+ * (F) Test that a client that stops reading the partial results of its dig is
+ *     disconnected once the idle timeout is over, while the dig goes on
+ *
+ */
+
+public class MinesweeperServerTest {
+
+    private static final long IDLE_TIMEOUT = 300;
+
+    private static MinesweeperServer start() throws IOException {
+        return start(new Board("src/minesweeper/server/goodBoard.txt"));
+    }
+
+    private static MinesweeperServer start(Minefield board) throws IOException {
+        final MinesweeperServer server = new MinesweeperServer(0, true, board, IDLE_TIMEOUT);
+        Thread serving = new Thread() {
+            public void run() {
+                try {
+                    server.serve();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        };
+        serving.setDaemon(true);
+        serving.start();
+        return server;
+    }
+
+    @Test
+    public void testPing() throws IOException {
+        MinesweeperServer server = start();
+        Socket socket = new Socket("localhost", server.getPort());
+        try {
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+            assertTrue(in.readLine().startsWith("Welcome"));
+            out.println("ping");
+            assertEquals("pong", in.readLine());
+        } finally {
+            socket.close();
+        }
+    }
+
+    @Test
+    public void testIdleClientReaped() throws IOException {
+        MinesweeperServer server = start();
+        Socket socket = new Socket("localhost", server.getPort());
+        try {
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            assertTrue(in.readLine().startsWith("Welcome"));
+            assertEquals(1, server.getNumPlayers());
+            socket.setSoTimeout((int) IDLE_TIMEOUT * 20);
+            assertNull(in.readLine());
+            assertEquals(0, server.getNumPlayers());
+        } finally {
+            socket.close();
+        }
+    }
+
+    @Test
+    public void testHeartbeatKeepsClient() throws IOException, InterruptedException {
+        MinesweeperServer server = start();
+        Socket socket = new Socket("localhost", server.getPort());
+        try {
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+            assertTrue(in.readLine().startsWith("Welcome"));
+            for (int i = 0; i < 10; i++) {
+                Thread.sleep(IDLE_TIMEOUT / 4);
+                out.println("ping");
+                assertEquals("pong", in.readLine());
+            }
+            assertEquals(1, server.getNumPlayers());
+        } finally {
+            socket.close();
+        }
+    }
+
+    @Test
+    public void testProgressClientReaped() throws IOException, InterruptedException {
+        final char[] row = new char[1 << 16];
+        Arrays.fill(row, '-');
+        final String rendering = new String(row);
+        final long end = System.currentTimeMillis() + IDLE_TIMEOUT * 20;
+        // a dig sending partial results until the end of the test
+        MinesweeperServer server = start(new Board(new boolean[5][5]) {
+            public String dig(int x, int y, Minefield.Progress progress) {
+                while (System.currentTimeMillis() < end) {
+                    progress.partial(0, rendering);
+                }
+                return toString();
+            }
+        });
+        Socket socket = new Socket("localhost", server.getPort());
+        try {
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+            assertTrue(in.readLine().startsWith("Welcome"));
+            out.println(MinesweeperServerThread.PROGRESS);
+            assertEquals(MinesweeperServerThread.PROGRESS, in.readLine());
+            out.println("dig 0 0");
+            final long deadline = System.currentTimeMillis() + IDLE_TIMEOUT * 10;
+            while (server.getNumPlayers() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+            assertEquals(0, server.getNumPlayers());
+        } finally {
+            socket.close();
+        }
+    }
+
+    private static String readBoard(BufferedReader in, int rows) throws IOException {
+        StringBuilder board = new StringBuilder();
+        for (int x = 0; x < rows; x++) {
+            board.append(in.readLine()).append('\n');
+        }
+        // the blank line ending the reply
+        in.readLine();
+        return board.toString();
+    }
+
+    @Test
+    public void testReplayAndRewind() throws IOException {
+        Board board = new Board("src/minesweeper/server/goodBoard.txt");
+        MinesweeperServer server = start(new BoardHistory(new PersistentBoard(board.snapshot())));
+        Socket socket = new Socket("localhost", server.getPort());
+        try {
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+            assertTrue(in.readLine().startsWith("Welcome"));
+            final String start = board.toString();
+            out.println("flag 0 0");
+            assertEquals(board.flag(0, 0), readBoard(in, 5));
+            out.println("dig 4 0");
+            assertEquals(board.dig(4, 0), readBoard(in, 5));
+            out.println("history");
+            assertEquals("2 moves", in.readLine());
+            out.println("replay 0");
+            assertEquals(start, readBoard(in, 5));
+            out.println("rewind 1");
+            assertEquals("F - - - -\n- - - - -\n- - - - -\n- - - - -\n- - - - -\n", readBoard(in, 5));
+            out.println("look");
+            assertEquals("F - - - -\n- - - - -\n- - - - -\n- - - - -\n- - - - -\n", readBoard(in, 5));
+        } finally {
+            socket.close();
+        }
+    }
+
+    // read a line byte by byte, so that nothing after it is buffered away
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        for (int c = in.read(); c != '\n'; c = in.read()) {
+            if (c == -1) {
+                return null;
+            }
+            line.append((char) c);
+        }
+        return line.toString();
+    }
+
+    @Test
+    public void testCompress() throws IOException {
+        Board board = new Board("src/minesweeper/server/goodBoard.txt");
+        MinesweeperServer server = start(new Board("src/minesweeper/server/goodBoard.txt"));
+        Socket socket = new Socket("localhost", server.getPort());
+        try {
+            InputStream raw = socket.getInputStream();
+            PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+            assertTrue(readLine(raw).startsWith("Welcome"));
+            out.println(MinesweeperServerThread.COMPRESS);
+            assertEquals(MinesweeperServerThread.COMPRESS, readLine(raw));
+            InputStream in = new InflaterInputStream(raw);
+            String[] commands = { "look", "flag 0 0", "dig 4 0", "look", "deflag 0 0" };
+            String[] expected = { board.look(), board.flag(0, 0), board.dig(4, 0), board.look(), board.deflag(0, 0) };
+            for (int i = 0; i < commands.length; i++) {
+                out.println(commands[i]);
+                StringBuilder reply = new StringBuilder();
+                for (int x = 0; x < 5; x++) {
+                    reply.append(readLine(in)).append('\n');
+                }
+                assertEquals(expected[i], reply.toString());
+                assertEquals("", readLine(in));
+            }
+            out.println("ping");
+            assertEquals("pong", readLine(in));
+        } finally {
+            socket.close();
+        }
+    }
+}
@@ -5,8 +5,11 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.PrintWriter;
 import java.net.Socket;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
 
-import minesweeper.Board;
+import minesweeper.BoardHistory;
+import minesweeper.Minefield;
 import minesweeper.Square.boomException;
 
 /**
@@ -15,12 +18,39 @@ import minesweeper.Square.boomException;
 
 
 public class MinesweeperServerThread extends Thread {
+    /**
+     * Sent by a client as its very first message to have every following server
+     * message deflated (see handleConnection); the server confirms by echoing it
+     * uncompressed. Messages from the client are never compressed.
+     * The stream is in zlib format (java.util.zip.InflaterInputStream reads it).
+     */
+    public static final String COMPRESS = "compress";
+
+    /**
+     * Sent by a client, at any time, to see its large digs as they progress: from
+     * then on, a dig revealing a large area is preceded by the rows it has changed
+     * so far (at most every Board.PROGRESS_INTERVAL milliseconds), each one sent as
+     * a line "PROGRESS ROW" followed by the row, as it would appear in the board.
+     * The reply to the dig itself (the whole board) comes last, as usual. The
+     * server confirms by echoing PROGRESS.
+     */
+    public static final String PROGRESS = "progress";
+
     private final Socket socket;
-    private final Board board;
+    private final Minefield board;
     private final boolean debug;
     private final MinesweeperServer server;
+    private Minefield.Progress progress = null; // see PROGRESS
+    private boolean admin = false; // see handleRequest
+    /*
+     * for the reaper (see MinesweeperServer): System.nanoTime() when the thread last
+     * went back to waiting for the client, unless busy with a request
+     */
+    private volatile long idleSince = System.nanoTime();
+    private volatile boolean busy = false;
+    private volatile boolean reaped = false;
     
-    public MinesweeperServerThread(MinesweeperServer server, Socket socket, Board board, boolean debug) {
+    public MinesweeperServerThread(MinesweeperServer server, Socket socket, Minefield board, boolean debug) {
     	// constructor
         this.socket = socket;
         this.board = board;
@@ -35,7 +65,29 @@ public class MinesweeperServerThread extends Thread {
             handleConnection(socket);
             
         } catch (IOException e) {
-            e.printStackTrace();
+            if (!reaped) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * @param now System.nanoTime()
+     * @return how long the client has been silent, 0 while its last request is in progress
+     */
+    long idleNanos(long now) {
+        return busy ? 0 : now - idleSince;
+    }
+
+    /**
+     * Disconnect the client, from the reaper thread.
+     */
+    void reap() {
+        reaped = true;
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // closed anyway
         }
     }
     
@@ -43,18 +95,61 @@ public class MinesweeperServerThread extends Thread {
     
     /**
      * Handle a single client connection.  Returns when client disconnects.
+     * 
+     * A client opening with COMPRESS gets a single deflate stream for the rest of
+     * the connection, sync flushed after each message so that it can be inflated
+     * as soon as it arrives. The Deflater lives as long as the connection, so the
+     * previous boards are still in its window when the next one is compressed:
+     * a 'look' at an almost unchanged board costs a few bytes.
+     * 
      * @param socket socket where the client is connected
      * @throws IOException if connection has an error or terminates unexpectedly
      */
     private void handleConnection(Socket socket) throws IOException {
         BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
         PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+        Deflater deflater = null;
 
         try {
-        	server.increaseNumPlayers();
+            admin = board instanceof BoardHistory && socket.getInetAddress().isLoopbackAddress();
+        	server.addPlayer(this);
             out.println("Welcome to Minesweeper.  "+server.getNumPlayers()+ " people are playing including you.  Type 'help' for help.");
-            for (String line =in.readLine(); line!=null; line=in.readLine()) {
-                String output = handleRequest(line);
+            String line = in.readLine();
+            if (COMPRESS.equals(line)) {
+                out.println(COMPRESS);
+                deflater = new Deflater();
+                out = new PrintWriter(new DeflaterOutputStream(socket.getOutputStream(), deflater, 8192, true), true);
+                line = in.readLine();
+            }
+            for (; line!=null; line=in.readLine()) {
+                idleSince = System.nanoTime();
+                if (PROGRESS.equals(line)) {
+                    final PrintWriter partials = out;
+                    progress = new Minefield.Progress() {
+                        public void partial(int row, String rendering) {
+                            // blocked on a client that does not read is idle, as for a reply
+                            idleSince = System.nanoTime();
+                            busy = false;
+                            try {
+                                partials.println(PROGRESS + " " + row);
+                                partials.println(rendering);
+                            } finally {
+                                busy = true;
+                            }
+                        }
+                    };
+                    out.println(PROGRESS);
+                    continue;
+                }
+                busy = true;
+                String output;
+                try {
+                    output = handleRequest(line);
+                } finally {
+                    // a client that does not read its replies is idle while the reply is blocked
+                    idleSince = System.nanoTime();
+                    busy = false;
+                }
                 if(output != null) {
                     out.println(output);
                 }
@@ -68,7 +163,10 @@ public class MinesweeperServerThread extends Thread {
         finally {        
             out.close();
             in.close();
-            server.decreaseNumPlayers();
+            if (deflater != null) {
+                deflater.end();
+            }
+            server.removePlayer(this);
         }
     }
     
@@ -78,49 +176,126 @@ public class MinesweeperServerThread extends Thread {
      * make requested mutations on game state if applicable, then return 
      * appropriate message to the user.
      * 
+     * The input is matched against the grammar (see 'help') by hand rather than
+     * with a regex and split, so that a request allocates nothing besides the
+     * reply; CommandAllocationTest keeps it that way.
+     * 
+     * When the board is a BoardHistory, clients connected from the server's own
+     * host may also send these admin messages:
+     * 
+     * HISTORY :== 'history'                  replies the number of moves played
+     * REPLAY  :== 'replay' SPACE VERSION     replies the board after move VERSION (0 for the start)
+     * REWIND  :== 'rewind' SPACE VERSION     brings the game back to VERSION for every player,
+     *                                        forgetting the later moves; replies the board
+     * 
      * @param input
      * @return
      * @throws closureException 
      */
-    private String handleRequest(String input) throws closureException{
-        String regex = "(look)|(dig \\d+ \\d+)|(flag \\d+ \\d+)|" +
-                "(deflag \\d+ \\d+)|(help)|(bye)";
-        if(!input.matches(regex)) {
-            //invalid input
-            return null;
-        }
-        
-        String[] tokens = input.split(" ");
-        System.out.println(input);
-        if (tokens[0].equals("look")) {
-            return board.toString();
-        } else if (tokens[0].equals("help")) {
+    String handleRequest(String input) throws closureException{
+        if (input.equals("look")) {
+            System.out.println(input);
+            return board.look();
+        } else if (input.equals("help")) {
+            System.out.println(input);
         	String message =   
-        			"MESSAGE     :== ( LOOK | DIG | FLAG | DEFLAG | HELP_REQ | BYE ) NEWLINE"+
+        			"MESSAGE     :== ( LOOK | DIG | FLAG | DEFLAG | HELP_REQ | PING | BYE ) NEWLINE"+
                     "LOOK        :== 'look'"+
                     "DIG         :== 'dig' SPACE X SPACE Y"+
                     "FLAG        :== 'flag' SPACE X SPACE Y"+
                     "DEFLAG      :== 'deflag' SPACE X SPACE Y"+
                     "HELP_REQ    :== 'help'"+
+                    "PING        :== 'ping'"+
                     "BYE         :== 'bye'";
             
             return message;
-        } else if (tokens[0].equals("bye")) {
+        } else if (input.equals("ping")) {
+            // heartbeat: not logged
+            return "pong";
+        } else if (input.equals("bye")) {
+            System.out.println(input);
             throw new closureException();
-        } else {
-            int x = Integer.parseInt(tokens[1]);
-            int y = Integer.parseInt(tokens[2]);
-            if (tokens[0].equals("dig")) {
-                return board.dig(x, y);
-            } else if (tokens[0].equals("flag")) {
-                return board.flag(x, y);
-            } else if (tokens[0].equals("deflag")) {
-                return board.deflag(x, y);
+        }
+        final int space = input.indexOf(' ');
+        if (admin) {
+            final String output = handleAdmin(input, space);
+            if (output != null) {
+                return output;
+            }
+        }
+        final int secondSpace = space < 0 ? -1 : input.indexOf(' ', space + 1);
+        if (secondSpace < 0) {
+            //invalid input
+            return null;
+        }
+        final int x = parseCoordinate(input, space + 1, secondSpace);
+        final int y = parseCoordinate(input, secondSpace + 1, input.length());
+        if (x < 0 || y < 0) {
+            //invalid input
+            return null;
+        }
+        if (space == 3 && input.startsWith("dig")) {
+            System.out.println(input);
+            return board.dig(x, y, progress);
+        } else if (space == 4 && input.startsWith("flag")) {
+            System.out.println(input);
+            return board.flag(x, y);
+        } else if (space == 6 && input.startsWith("deflag")) {
+            System.out.println(input);
+            return board.deflag(x, y);
+        }
+        //invalid input
+        return null;
+    }
+
+    /**
+     * @return the reply to an admin message (see handleRequest), or null if input
+     *         is not one
+     */
+    private String handleAdmin(String input, int space) {
+        final BoardHistory history = (BoardHistory) board;
+        if (input.equals("history")) {
+            System.out.println(input);
+            return history.size() + " moves";
+        }
+        final int version = space < 0 ? -1 : parseCoordinate(input, space + 1, input.length());
+        if (version < 0 || space != 6) {
+            return null;
+        }
+        try {
+            if (input.startsWith("replay")) {
+                System.out.println(input);
+                return history.version(version).toString();
+            } else if (input.startsWith("rewind")) {
+                System.out.println(input);
+                return history.rewind(version);
             }
+        } catch (IndexOutOfBoundsException e) {
+            // no such version: invalid input
         }
-        // Should never get here; if gets here, throw exception
-        throw new UnsupportedOperationException();
+        return null;
+    }
 
+    /**
+     * @return the value of input[from, to) if it is a non-empty string of digits
+     *         that fits in an int, -1 otherwise
+     */
+    private static int parseCoordinate(String input, int from, int to) {
+        if (from >= to) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = from; i < to; i++) {
+            final char c = input.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+            if (value > Integer.MAX_VALUE) {
+                return -1;
+            }
+        }
+        return (int) value;
     }
     
     @SuppressWarnings("serial")
@@ -0,0 +1,249 @@
+package minesweeper.server;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.Socket;
+
+import minesweeper.Board;
+import minesweeper.Minefield;
+
+/**
+ * ReplicaBoard is a read-only copy of the Board of a primary ReplicatedBoard,
+ * kept up to date from the primary's stream of mutations (see ReplicatedBoard.java
+ * for the replication protocol). A MinesweeperServer playing on it serves 'look'
+ * to spectators without touching the primary; dig, flag and deflag change nothing
+ * and reply with the board as it is.
+ *
+ * ReplicaBoard is thread safe. The mutations are applied by a single thread; the
+ * reference to the Board is volatile because a snapshot replaces it as a whole,
+ * and the sequence numbers are only written by that thread. Mutations are
+ * applied without rendering the board: only 'look' renders it.
+ */
+
+public class ReplicaBoard implements Minefield {
+
+    /** Milliseconds to wait before reconnecting to the primary. */
+    private static final long RETRY = 1000;
+    /** Seconds between two lag reports of main(). */
+    private static final long LAG_REPORT = 5;
+
+    private final String host;
+    private final int port;
+    private volatile Board board;
+    /* the primary the board comes from, see ReplicatedBoard */
+    private volatile String primary = "-";
+    private volatile int snapshots = 0;
+    /* the current connection to the primary, closed by close() */
+    private volatile Socket socket;
+    private volatile boolean closed = false;
+    /* "applied" is the last mutation applied here, "head" the last one the primary reported */
+    private volatile long applied = -1;
+    private volatile long head = -1;
+
+    /**
+     * Connect to the primary's replication port and start following it.
+     * Returns once the first snapshot has been received.
+     */
+    public ReplicaBoard(String host, int port) throws IOException {
+        this.host = host;
+        this.port = port;
+        final Socket socket = new Socket(host, port);
+        final BufferedReader in = sync(socket);
+        while (board == null) {
+            String line = in.readLine();
+            if (line == null) {
+                throw new IOException("primary closed the connection");
+            }
+            apply(line, in);
+        }
+        Thread follower = new Thread() {
+            public void run() {
+                follow(socket, in);
+            }
+        };
+        follower.setDaemon(true);
+        follower.start();
+    }
+
+    private BufferedReader sync(Socket socket) throws IOException {
+        this.socket = socket;
+        PrintWriter out = new PrintWriter(socket.getOutputStream());
+        out.println("sync " + primary + " " + applied);
+        out.flush();
+        return new BufferedReader(new InputStreamReader(socket.getInputStream()));
+    }
+
+    /*
+     * apply the stream until the connection drops, then reconnect and ask for
+     * the mutations after the last one applied, forever
+     */
+    private void follow(Socket socket, BufferedReader in) {
+        while (!closed) {
+            try {
+                for (String line = in.readLine(); line != null; line = in.readLine()) {
+                    apply(line, in);
+                }
+            } catch (IOException e) {
+                // reconnect below
+            } catch (RuntimeException e) {
+                // not the replication protocol: reconnect below
+                e.printStackTrace();
+            }
+            try {
+                socket.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            if (closed) {
+                return;
+            }
+            System.err.println("lost primary at mutation " + applied + ", reconnecting");
+            while (true) {
+                try {
+                    Thread.sleep(RETRY);
+                    if (closed) {
+                        return;
+                    }
+                    socket = new Socket(host, port);
+                    if (socket.getLocalPort() == port && socket.getLocalAddress().equals(socket.getInetAddress())) {
+                        // with the primary down on this host, TCP may connect the socket to
+                        // itself, and so keep the primary from listening again
+                        socket.close();
+                        continue;
+                    }
+                    in = sync(socket);
+                    break;
+                } catch (IOException e) {
+                    // primary still down, try again
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void apply(String line, BufferedReader in) throws IOException {
+        String[] tokens = line.split(" ");
+        if (tokens[0].equals("head")) {
+            head = Long.parseLong(tokens[1]);
+        } else if (tokens[0].equals("snapshot")) {
+            final char[][] snapshot = new char[Integer.parseInt(tokens[3])][];
+            for (int x = 0; x < snapshot.length; x++) {
+                String row = in.readLine();
+                if (row == null) {
+                    throw new IOException("primary closed the connection");
+                }
+                snapshot[x] = row.toCharArray();
+            }
+            board = new Board(snapshot);
+            primary = tokens[1];
+            applied = Long.parseLong(tokens[2]);
+            head = applied;
+            snapshots++;
+            System.out.println("replica restored from snapshot at mutation " + applied);
+        } else {
+            final long seq = Long.parseLong(tokens[0]);
+            if (seq != applied + 1) {
+                throw new IOException("expected mutation " + (applied + 1) + ", got " + seq);
+            }
+            final int x = Integer.parseInt(tokens[2]);
+            final int y = Integer.parseInt(tokens[3]);
+            if (tokens[1].equals("dig")) {
+                board.digSquare(x, y);
+            } else if (tokens[1].equals("flag")) {
+                board.flagSquare(x, y);
+            } else if (tokens[1].equals("deflag")) {
+                board.deflagSquare(x, y);
+            }
+            applied = seq;
+        }
+    }
+
+    /**
+     * Stop following the primary; the replica keeps the board as it is.
+     */
+    public void close() throws IOException {
+        closed = true;
+        socket.close();
+    }
+
+    /**
+     * @return the number of mutations the primary reported having applied that
+     *         are not yet applied here
+     */
+    public long lag() {
+        return Math.max(0, head - applied);
+    }
+
+    /**
+     * @return the last mutation applied here
+     */
+    public long applied() {
+        return applied;
+    }
+
+    /**
+     * @return the number of snapshots received, the first one included
+     */
+    public int snapshots() {
+        return snapshots;
+    }
+
+    public String dig(int x, int y) {
+        return look();
+    }
+
+    public String flag(int x, int y) {
+        return look();
+    }
+
+    public String deflag(int x, int y) {
+        return look();
+    }
+
+    public String look() {
+        return board.look();
+    }
+
+    /**
+     * Start a MinesweeperServer on the default port (4444, or the minesweeper.customport
+     * system property) serving a replica of the ReplicatedBoard publishing on HOST:PORT.
+     * The replication lag is printed every LAG_REPORT seconds while it is not zero.
+     *
+     * Usage: ReplicaBoard HOST:PORT
+     */
+    public static void main(String[] args) {
+        if (args.length != 1 || args[0].lastIndexOf(':') < 0) {
+            System.err.println("usage: ReplicaBoard HOST:PORT");
+            return;
+        }
+        final int colon = args[0].lastIndexOf(':');
+        String portProp = System.getProperty("minesweeper.customport");
+        final int port = portProp == null ? 4444 : Integer.parseInt(portProp);
+        try {
+            final ReplicaBoard replica = new ReplicaBoard(args[0].substring(0, colon),
+                    Integer.parseInt(args[0].substring(colon + 1)));
+            Thread reporter = new Thread() {
+                public void run() {
+                    try {
+                        while (true) {
+                            Thread.sleep(LAG_REPORT * 1000);
+                            if (replica.lag() > 0) {
+                                System.out.println("replication lag: " + replica.lag() + " mutations");
+                            }
+                        }
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            };
+            reporter.setDaemon(true);
+            reporter.start();
+            new MinesweeperServer(port, false, replica).serve();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
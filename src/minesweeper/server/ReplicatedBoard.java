@@ -0,0 +1,244 @@
+package minesweeper.server;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import minesweeper.Board;
+import minesweeper.Minefield;
+
+/**
+ * ReplicatedBoard is the primary side of replication: it plays on a Board like
+ * any Minefield, and publishes every mutation it applies, in order, to the
+ * ReplicaBoard processes connected to its replication port.
+ *
+ * ReplicatedBoard is thread safe. Mutations are synchronized on the
+ * ReplicatedBoard so that the order of the stream is the order in which they were
+ * applied, and so that a snapshot always matches a position in the stream.
+ * look is not synchronized here (Board.toString is), so readers on the primary
+ * never wait for the log. Each replica is served by its own thread, which waits on
+ * the ReplicatedBoard for new mutations.
+ *
+ * The replication protocol is line based. A replica opens with
+ *
+ * SYNC     :== 'sync' SPACE ID SPACE SEQ   SEQ is the last mutation it applied, or -1,
+ *                                       from the primary ID, or '-' if it has no board yet
+ *
+ * and then only reads:
+ *
+ * SNAPSHOT :== 'snapshot' SPACE ID SPACE SEQ SPACE N NEWLINE (ROW NEWLINE){N}   see Board.snapshot()
+ * ENTRY    :== SEQ SPACE ( 'dig' | 'flag' | 'deflag' ) SPACE X SPACE Y
+ * HEAD     :== 'head' SPACE SEQ       the last mutation applied on the primary
+ *
+ * The last LOG_CAPACITY mutations are kept in memory; a replica asking for an
+ * older one, or falling that far behind, receives a snapshot instead.
+ *
+ * ID is drawn at random by each ReplicatedBoard, so a replica reconnecting to a
+ * restarted primary (a different board, whose sequence numbers start over) is
+ * sent a snapshot, even if the new primary has already reached SEQ.
+ */
+
+public class ReplicatedBoard implements Minefield {
+
+    /** Number of mutations kept for replicas to catch up from. */
+    public static final int LOG_CAPACITY = 10000;
+    /** Milliseconds between two 'head' lines sent to an idle replica. */
+    private static final long HEARTBEAT = 1000;
+
+    private final Board board;
+    private final String id = Long.toHexString(new Random().nextLong() & Long.MAX_VALUE);
+    /* the sockets of publish(), closed by close() */
+    private final List<Socket> sockets = new ArrayList<Socket>();
+    private ServerSocket serverSocket;
+    /* the mutation with sequence number seq is stored at log[seq % LOG_CAPACITY] */
+    private final String[] log = new String[LOG_CAPACITY];
+    private long head = -1;
+
+    public ReplicatedBoard(Board board) {
+        this.board = board;
+    }
+
+    private void append(String mutation) {
+        head++;
+        log[(int) (head % LOG_CAPACITY)] = mutation;
+        notifyAll();
+    }
+
+    public synchronized String dig(int x, int y) {
+        String output = board.dig(x, y);
+        append("dig " + x + " " + y);
+        return output;
+    }
+
+    public synchronized String flag(int x, int y) {
+        String output = board.flag(x, y);
+        append("flag " + x + " " + y);
+        return output;
+    }
+
+    public synchronized String deflag(int x, int y) {
+        String output = board.deflag(x, y);
+        append("deflag " + x + " " + y);
+        return output;
+    }
+
+    public String look() {
+        return board.look();
+    }
+
+    /**
+     * Start accepting replicas on port, in a new thread.
+     * @return the port replicas connect to (useful when port is 0)
+     */
+    public int publish(int port) throws IOException {
+        final ServerSocket serverSocket = new ServerSocket(port);
+        synchronized (sockets) {
+            this.serverSocket = serverSocket;
+        }
+        new Thread() {
+            public void run() {
+                try {
+                    while (true) {
+                        final Socket socket = serverSocket.accept();
+                        synchronized (sockets) {
+                            sockets.add(socket);
+                        }
+                        new Thread() {
+                            public void run() {
+                                try {
+                                    handleReplica(socket);
+                                } catch (IOException e) {
+                                    // the replica reconnects on its own
+                                } catch (InterruptedException e) {
+                                    return;
+                                } finally {
+                                    synchronized (sockets) {
+                                        sockets.remove(socket);
+                                    }
+                                }
+                            }
+                        }.start();
+                    }
+                } catch (IOException e) {
+                    if (!serverSocket.isClosed()) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+        }.start();
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Stop publishing: close the replication port and the connections of the
+     * replicas, which keep trying to reconnect. The board can still be played,
+     * and published again.
+     */
+    public void close() throws IOException {
+        synchronized (sockets) {
+            if (serverSocket != null) {
+                serverSocket.close();
+            }
+            for (Socket socket : sockets) {
+                socket.close();
+            }
+        }
+    }
+
+    private void handleReplica(Socket socket) throws IOException, InterruptedException {
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+        PrintWriter out = new PrintWriter(socket.getOutputStream());
+        try {
+            String[] tokens = String.valueOf(in.readLine()).split(" ");
+            if (tokens.length != 3 || !tokens[0].equals("sync")) {
+                return;
+            }
+            long next = Long.parseLong(tokens[2]) + 1;
+            // a new replica has no board ('-'); one that synced with another primary has the wrong one
+            boolean stale = !tokens[1].equals(id);
+            final List<String> batch = new ArrayList<String>();
+            while (!out.checkError()) {
+                char[][] snapshot = null;
+                long last;
+                synchronized (this) {
+                    if (head < next) {
+                        wait(HEARTBEAT);
+                    }
+                    last = head;
+                    if (stale || next > head + 1 || head + 1 - next > LOG_CAPACITY) {
+                        // the log cannot bring the replica up to date: start over from the current state
+                        snapshot = board.snapshot();
+                        next = head + 1;
+                        stale = false;
+                    }
+                    for (; next <= head; next++) {
+                        batch.add(next + " " + log[(int) (next % LOG_CAPACITY)]);
+                    }
+                }
+                if (snapshot != null) {
+                    out.println("snapshot " + id + " " + last + " " + snapshot.length);
+                    for (char[] row : snapshot) {
+                        out.println(row);
+                    }
+                }
+                for (String entry : batch) {
+                    out.println(entry);
+                }
+                batch.clear();
+                out.println("head " + last);
+                out.flush();
+            }
+        } finally {
+            out.close();
+            in.close();
+        }
+    }
+
+    /**
+     * Start a MinesweeperServer on the default port (4444, or the minesweeper.customport
+     * system property) playing on a random board, and publish its mutations to replicas
+     * on REPLICATION_PORT.
+     *
+     * Usage: ReplicatedBoard DEBUG REPLICATION_PORT [(-s SIZE | -f FILE)]
+     *
+     * DEBUG, SIZE and FILE have the same meaning as for MinesweeperServer. Replicas are
+     * started with ReplicaBoard.main().
+     */
+    public static void main(String[] args) {
+        final Board board;
+        final int replicationPort;
+        try {
+            if ((args.length != 2 && args.length != 4) || !(args[0].equals("true") || args[0].equals("false"))) {
+                throw new IllegalArgumentException();
+            }
+            replicationPort = Integer.parseInt(args[1]);
+            if (args.length == 2) {
+                board = new Board(10);
+            } else if (args[2].equals("-s")) {
+                board = new Board(Integer.parseInt(args[3]));
+            } else if (args[2].equals("-f")) {
+                board = new Board(args[3]);
+            } else {
+                throw new IllegalArgumentException();
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println("usage: ReplicatedBoard DEBUG REPLICATION_PORT [(-s SIZE | -f FILE)]");
+            return;
+        }
+        String portProp = System.getProperty("minesweeper.customport");
+        final int port = portProp == null ? 4444 : Integer.parseInt(portProp);
+        try {
+            ReplicatedBoard primary = new ReplicatedBoard(board);
+            primary.publish(replicationPort);
+            new MinesweeperServer(port, args[0].equals("true"), primary).serve();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package minesweeper.server;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.net.BindException;
+
+import minesweeper.Board;
+
+import org.junit.Test;
+
+/**
+ *
+ * Test Strategy:
+ *
+ * A ReplicatedBoard and a ReplicaBoard on localhost:
+ *
+ * (A) Test that a new replica starts from a snapshot, then follows the
+ *     mutations one by one
+ * (B) Test that a replica reconnecting to the same primary catches up
+ *     i. from the log, when it missed fewer than LOG_CAPACITY mutations
+ *     ii. from a snapshot, when it missed more
+ * (C) Test that a replica reconnecting to a restarted primary gets a snapshot
+ *     of the new board, even when the new primary is past the replica's
+ *     last mutation
+ *
+ */
+
+public class ReplicationTest {
+
+    private static final long TIMEOUT = 10000;
+
+    // wait until the replica has applied every mutation of the primary
+    private static void awaitSync(ReplicatedBoard primary, ReplicaBoard replica, long head)
+            throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (replica.applied() != head && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals(head, replica.applied());
+        assertEquals(primary.look(), replica.look());
+    }
+
+    /*
+     * publish primary on port again; the replica may briefly hold the port, see
+     * ReplicaBoard.follow
+     */
+    private static void republish(ReplicatedBoard primary, int port) throws IOException, InterruptedException {
+        final long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (true) {
+            try {
+                primary.publish(port);
+                return;
+            } catch (BindException e) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw e;
+                }
+                Thread.sleep(20);
+            }
+        }
+    }
+
+    @Test
+    public void testFollow() throws IOException, InterruptedException {
+        ReplicatedBoard primary = new ReplicatedBoard(new Board("src/minesweeper/server/goodBoard.txt"));
+        primary.dig(4, 0);
+        ReplicaBoard replica = new ReplicaBoard("localhost", primary.publish(0));
+        try {
+            awaitSync(primary, replica, 0);
+            primary.flag(0, 0);
+            primary.dig(3, 3);
+            primary.deflag(0, 0);
+            awaitSync(primary, replica, 3);
+            assertEquals(1, replica.snapshots());
+            // a replica is read-only
+            replica.flag(1, 1);
+            assertEquals(primary.look(), replica.look());
+        } finally {
+            replica.close();
+            primary.close();
+        }
+    }
+
+    @Test
+    public void testReconnect() throws IOException, InterruptedException {
+        ReplicatedBoard primary = new ReplicatedBoard(new Board("src/minesweeper/server/goodBoard.txt"));
+        final int port = primary.publish(0);
+        ReplicaBoard replica = new ReplicaBoard("localhost", port);
+        try {
+            awaitSync(primary, replica, -1);
+            primary.close();
+            primary.dig(4, 0);
+            primary.flag(0, 0);
+            republish(primary, port);
+            awaitSync(primary, replica, 1);
+            assertEquals(1, replica.snapshots());
+
+            primary.close();
+            for (int i = 0; i < ReplicatedBoard.LOG_CAPACITY; i++) {
+                primary.flag(1, 1);
+                primary.deflag(1, 1);
+            }
+            republish(primary, port);
+            awaitSync(primary, replica, 1 + 2 * ReplicatedBoard.LOG_CAPACITY);
+            assertEquals(2, replica.snapshots());
+        } finally {
+            replica.close();
+            primary.close();
+        }
+    }
+
+    @Test
+    public void testRestartedPrimary() throws IOException, InterruptedException {
+        ReplicatedBoard primary = new ReplicatedBoard(new Board("src/minesweeper/server/goodBoard.txt"));
+        final int port = primary.publish(0);
+        ReplicaBoard replica = new ReplicaBoard("localhost", port);
+        primary.dig(4, 0);
+        awaitSync(primary, replica, 0);
+        primary.close();
+
+        ReplicatedBoard restarted = new ReplicatedBoard(new Board(new boolean[5][5]));
+        restarted.flag(0, 0);
+        restarted.flag(4, 4);
+        republish(restarted, port);
+        try {
+            awaitSync(restarted, replica, 1);
+            assertEquals(2, replica.snapshots());
+        } finally {
+            replica.close();
+            restarted.close();
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package minesweeper.server;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+import minesweeper.BoardTile;
+
+/**
+ * ShardServer owns one BoardTile of a sharded board and serves it to a
+ * ShardedBoard (the routing front end), never to players directly.
+ *
+ * ShardServer is thread safe: there is one thread per connection, as in
+ * MinesweeperServer, and all of them share the (thread safe) tile.
+ *
+ * The shard protocol is line based. Every request is answered by zero or more
+ * lines followed by a line containing END:
+ *
+ * REQUEST :== ( BOUNDS | DIG | FLAG | DEFLAG | DEFUSE | RENDER ) NEWLINE
+ * BOUNDS  :== 'bounds'      replies ROWS COLUMNS TOP LEFT BOTTOM RIGHT
+ * DIG     :== 'dig' (SPACE X SPACE Y)+   digs every square given, replies an optional
+ *                                        'BOOM', then one 'spill X Y' per spilled square
+ * FLAG    :== 'flag' SPACE X SPACE Y
+ * DEFLAG  :== 'deflag' SPACE X SPACE Y
+ * DEFUSE  :== 'defuse' SPACE X SPACE Y
+ * RENDER  :== 'render'      replies the owned rows, as BoardTile.toString()
+ */
+
+public class ShardServer {
+
+    private final ServerSocket serverSocket;
+    private final BoardTile tile;
+
+    public ShardServer(int port, BoardTile tile) throws IOException {
+        this.serverSocket = new ServerSocket(port);
+        this.tile = tile;
+    }
+
+    /**
+     * @return the port the shard listens on (useful when it was made with port 0)
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Run the shard, listening for connections from routers and handling them.
+     * Never returns unless an exception is thrown.
+     * @throws IOException if the main server socket is broken
+     */
+    public void serve() throws IOException {
+        while (true) {
+            final Socket socket = serverSocket.accept();
+            new Thread() {
+                public void run() {
+                    try {
+                        handleConnection(socket);
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }.start();
+        }
+    }
+
+    private void handleConnection(Socket socket) throws IOException {
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+        PrintWriter out = new PrintWriter(socket.getOutputStream());
+        try {
+            for (String line = in.readLine(); line != null; line = in.readLine()) {
+                handleRequest(line, out);
+                out.println("END");
+                out.flush();
+            }
+        } finally {
+            out.close();
+            in.close();
+        }
+    }
+
+    private void handleRequest(String input, PrintWriter out) {
+        String[] tokens = input.split(" ");
+        if (tokens[0].equals("bounds")) {
+            out.println(tile.rows() + " " + tile.columns() + " " + tile.top() + " " + tile.left() + " "
+                    + tile.bottom() + " " + tile.right());
+        } else if (tokens[0].equals("render")) {
+            out.print(tile.toString());
+        } else if (tokens[0].equals("dig") && tokens.length % 2 == 1) {
+            List<int[]> cells = new ArrayList<int[]>(tokens.length / 2);
+            for (int i = 1; i < tokens.length; i += 2) {
+                cells.add(new int[] { Integer.parseInt(tokens[i]), Integer.parseInt(tokens[i + 1]) });
+            }
+            List<int[]> spills = new ArrayList<int[]>();
+            if (tile.dig(cells, spills)) {
+                out.println("BOOM");
+            }
+            for (int[] cell : spills) {
+                out.println("spill " + cell[0] + " " + cell[1]);
+            }
+        } else if (tokens.length == 3) {
+            int x = Integer.parseInt(tokens[1]);
+            int y = Integer.parseInt(tokens[2]);
+            if (tokens[0].equals("flag")) {
+                tile.flag(x, y);
+            } else if (tokens[0].equals("deflag")) {
+                tile.deflag(x, y);
+            } else if (tokens[0].equals("defuse")) {
+                tile.defuse(x, y);
+            }
+        }
+    }
+
+    /**
+     * Start a ShardServer owning the tile [TOP, BOTTOM) x [LEFT, RIGHT) of the board
+     * stored in FILE (same format as MinesweeperServer's -f option).
+     *
+     * Usage: ShardServer PORT FILE TOP LEFT BOTTOM RIGHT
+     *
+     * E.g. a 1000x1000 board split in four tiles on one machine:
+     *   ShardServer 5001 board.txt 0 0 500 500
+     *   ShardServer 5002 board.txt 0 500 500 1000
+     *   ShardServer 5003 board.txt 500 0 1000 500
+     *   ShardServer 5004 board.txt 500 500 1000 1000
+     * then a router in front of them, see ShardedBoard.main().
+     */
+    public static void main(String[] args) {
+        final int port, top, left, bottom, right;
+        try {
+            if (args.length != 6) {
+                throw new IllegalArgumentException();
+            }
+            port = Integer.parseInt(args[0]);
+            top = Integer.parseInt(args[2]);
+            left = Integer.parseInt(args[3]);
+            bottom = Integer.parseInt(args[4]);
+            right = Integer.parseInt(args[5]);
+        } catch (IllegalArgumentException e) {
+            System.err.println("usage: ShardServer PORT FILE TOP LEFT BOTTOM RIGHT");
+            return;
+        }
+        try {
+            new ShardServer(port, new BoardTile(args[1], top, left, bottom, right)).serve();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
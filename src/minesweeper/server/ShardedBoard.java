@@ -0,0 +1,257 @@
+package minesweeper.server;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import minesweeper.Minefield;
+import minesweeper.Square.boomException;
+
+/**
+ * ShardedBoard is the routing front end of a board split into rectangular tiles,
+ * each owned by a ShardServer (see ShardServer.java for the shard protocol).
+ * A MinesweeperServer plays on it exactly as on a local Board.
+ *
+ * dig, flag and deflag are forwarded to the shard owning the square. A dig that
+ * cascades over a tile border comes back with "spill" squares, which are dug on
+ * their own shards in turn until no shard spills any more: in rounds, each shard
+ * getting all of its squares of a round in one request. A dug bomb is reported
+ * to every neighboring shard holding a copy of it, so that their bomb numbers
+ * stay correct. look assembles the rows rendered by every shard.
+ *
+ * ShardedBoard is thread safe: every request is synchronized on the board, so a
+ * cross-shard cascade is never interleaved with another player's request and each
+ * shard connection is used by one thread at a time. The shards do the actual work
+ * (and hold the memory), the router only sequences it.
+ */
+
+public class ShardedBoard implements Minefield {
+
+    private final List<Shard> shards = new ArrayList<Shard>();
+    private final int rows;
+    private final int columns;
+
+    /**
+     * Connect to the shards and check that their tiles cover the board exactly once.
+     * @param addresses "host:port" of every shard server
+     */
+    public ShardedBoard(List<String> addresses) throws IOException {
+        long area = 0;
+        int rows = -1, columns = -1;
+        for (String address : addresses) {
+            final int colon = address.lastIndexOf(':');
+            final Shard shard = new Shard(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1)));
+            if (rows != -1 && (rows != shard.rows || columns != shard.columns)) {
+                throw new IllegalArgumentException("shard " + address + " is not part of the same board");
+            }
+            for (Shard other : shards) {
+                if (shard.top < other.bottom && other.top < shard.bottom && shard.left < other.right
+                        && other.left < shard.right) {
+                    throw new IllegalArgumentException("shard " + address + " overlaps another shard");
+                }
+            }
+            rows = shard.rows;
+            columns = shard.columns;
+            area += (long) (shard.bottom - shard.top) * (shard.right - shard.left);
+            shards.add(shard);
+        }
+        if (shards.isEmpty() || area != (long) rows * columns) {
+            throw new IllegalArgumentException("shards do not cover the whole board");
+        }
+        this.rows = rows;
+        this.columns = columns;
+        // render() relies on the shards of a row being visited from left to right
+        Collections.sort(shards, new Comparator<Shard>() {
+            public int compare(Shard a, Shard b) {
+                return a.left - b.left;
+            }
+        });
+    }
+
+    private Shard owner(int x, int y) {
+        for (Shard shard : shards) {
+            if (x >= shard.top && y >= shard.left && x < shard.bottom && y < shard.right) {
+                return shard;
+            }
+        }
+        throw new IllegalStateException("no shard owns " + x + " " + y);
+    }
+
+    private boolean inRange(int x, int y) {
+        return x >= 0 && y >= 0 && x < rows && y < columns;
+    }
+
+    public synchronized String dig(int x, int y) {
+        if (!inRange(x, y)) {
+            return look();
+        }
+        boolean boom = false;
+        // the squares to dig in the next round, as the request to their shard
+        Map<Shard, StringBuilder> pending = new LinkedHashMap<Shard, StringBuilder>();
+        pending.put(owner(x, y), new StringBuilder("dig " + x + " " + y));
+        while (!pending.isEmpty()) {
+            final Map<Shard, StringBuilder> round = pending;
+            pending = new LinkedHashMap<Shard, StringBuilder>();
+            for (Map.Entry<Shard, StringBuilder> request : round.entrySet()) {
+                for (String line : request.getKey().request(request.getValue().toString())) {
+                    final String[] tokens = line.split(" ");
+                    if (tokens[0].equals("BOOM")) {
+                        // only the first dig may hit a bomb: a cascade never reaches one
+                        boom = true;
+                        defuse(x, y);
+                    } else if (tokens[0].equals("spill")) {
+                        final Shard shard = owner(Integer.parseInt(tokens[1]), Integer.parseInt(tokens[2]));
+                        StringBuilder spills = pending.get(shard);
+                        if (spills == null) {
+                            spills = new StringBuilder("dig");
+                            pending.put(shard, spills);
+                        }
+                        spills.append(' ').append(tokens[1]).append(' ').append(tokens[2]);
+                    }
+                }
+            }
+        }
+        if (boom) {
+            return boomException.message;
+        }
+        return look();
+    }
+
+    /*
+     * tell every shard holding a copy of the (now dug) bomb at (x, y) about it
+     */
+    private void defuse(int x, int y) {
+        for (Shard shard : shards) {
+            final boolean owns = x >= shard.top && y >= shard.left && x < shard.bottom && y < shard.right;
+            final boolean copies = x >= shard.top - 1 && y >= shard.left - 1 && x <= shard.bottom && y <= shard.right;
+            if (copies && !owns) {
+                shard.request("defuse " + x + " " + y);
+            }
+        }
+    }
+
+    public synchronized String flag(int x, int y) {
+        if (inRange(x, y)) {
+            owner(x, y).request("flag " + x + " " + y);
+        }
+        return look();
+    }
+
+    public synchronized String deflag(int x, int y) {
+        if (inRange(x, y)) {
+            owner(x, y).request("deflag " + x + " " + y);
+        }
+        return look();
+    }
+
+    public synchronized String look() {
+        final List<List<String>> rendered = new ArrayList<List<String>>();
+        for (Shard shard : shards) {
+            rendered.add(shard.request("render"));
+        }
+        StringBuilder output = new StringBuilder();
+        for (int x = 0; x < rows; x++) {
+            boolean first = true;
+            for (int i = 0; i < shards.size(); i++) {
+                final Shard shard = shards.get(i);
+                if (x >= shard.top && x < shard.bottom) {
+                    if (!first) {
+                        output.append(' ');
+                    }
+                    output.append(rendered.get(i).get(x - shard.top));
+                    first = false;
+                }
+            }
+            output.append('\n');
+        }
+        return output.toString();
+    }
+
+    /**
+     * Close the connections to the shards; the board cannot be played any more.
+     */
+    public synchronized void close() throws IOException {
+        for (Shard shard : shards) {
+            shard.socket.close();
+        }
+    }
+
+    /**
+     * A connection to one ShardServer, and the bounds of the tile it owns.
+     */
+    private static class Shard {
+        private final Socket socket;
+        private final BufferedReader in;
+        private final PrintWriter out;
+        private final int rows, columns, top, left, bottom, right;
+
+        private Shard(String host, int port) throws IOException {
+            this.socket = new Socket(host, port);
+            socket.setTcpNoDelay(true);
+            this.in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            this.out = new PrintWriter(socket.getOutputStream());
+            final String[] bounds = request("bounds").get(0).split(" ");
+            this.rows = Integer.parseInt(bounds[0]);
+            this.columns = Integer.parseInt(bounds[1]);
+            this.top = Integer.parseInt(bounds[2]);
+            this.left = Integer.parseInt(bounds[3]);
+            this.bottom = Integer.parseInt(bounds[4]);
+            this.right = Integer.parseInt(bounds[5]);
+        }
+
+        /**
+         * @return the reply lines, without the terminating END
+         */
+        private List<String> request(String request) {
+            try {
+                out.println(request);
+                out.flush();
+                final List<String> reply = new ArrayList<String>();
+                for (String line = in.readLine(); !"END".equals(line); line = in.readLine()) {
+                    if (line == null) {
+                        throw new IOException("shard closed the connection");
+                    }
+                    reply.add(line);
+                }
+                return reply;
+            } catch (IOException e) {
+                throw new RuntimeException("shard unavailable", e);
+            }
+        }
+    }
+
+    /**
+     * Start a MinesweeperServer on the default port (4444, or the minesweeper.customport
+     * system property) whose board is split over the given shard servers.
+     *
+     * Usage: ShardedBoard DEBUG HOST:PORT+
+     *
+     * The DEBUG argument has the same meaning as for MinesweeperServer. The shards must
+     * already be running (see ShardServer.main()), and together cover the board exactly.
+     */
+    public static void main(String[] args) {
+        if (args.length < 2 || !(args[0].equals("true") || args[0].equals("false"))) {
+            System.err.println("usage: ShardedBoard DEBUG HOST:PORT+");
+            return;
+        }
+        String portProp = System.getProperty("minesweeper.customport");
+        final int port = portProp == null ? 4444 : Integer.parseInt(portProp);
+        List<String> addresses = new ArrayList<String>();
+        for (int i = 1; i < args.length; i++) {
+            addresses.add(args[i]);
+        }
+        try {
+            new MinesweeperServer(port, args[0].equals("true"), new ShardedBoard(addresses)).serve();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
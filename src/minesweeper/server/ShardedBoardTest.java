@@ -0,0 +1,155 @@
+package minesweeper.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import minesweeper.Board;
+import minesweeper.BoardTile;
+import minesweeper.Square.boomException;
+
+import org.junit.Test;
+
+/**
+ *
+ * Test Strategy:
+ *
+ * Shard servers on localhost, behind a ShardedBoard, against the same Board:
+ *
+ * (A) Test a cascade crossing several tile borders
+ * (B) Test a BOOM next to a tile border, and the bomb numbers of the
+ *     neighboring tiles afterwards
+ * (C) Test that a square flagged when a cascade spilled onto it is dug by a
+ *     later cascade, once deflagged
+ * (D) Test that a long random sequence of dig, flag, deflag and look on uneven
+ *     tiles gets the same replies as on the Board
+ *
+ */
+
+public class ShardedBoardTest {
+
+    private static final boolean[][] sparse = {
+            { false, false, false, false, true },
+            { false, false, false, false, false },
+            { false, false, false, false, false },
+            { true, false, false, false, false },
+            { false, false, false, true, false } };
+
+    /**
+     * @param tiles TOP LEFT BOTTOM RIGHT of every tile
+     * @return a ShardedBoard over one ShardServer per tile
+     */
+    private static ShardedBoard shard(boolean[][] bombState, int[][] tiles) throws IOException {
+        List<String> addresses = new ArrayList<String>();
+        for (int[] bounds : tiles) {
+            final ShardServer server = new ShardServer(0,
+                    new BoardTile(bombState, bounds[0], bounds[1], bounds[2], bounds[3]));
+            Thread serving = new Thread() {
+                public void run() {
+                    try {
+                        server.serve();
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }
+            };
+            serving.setDaemon(true);
+            serving.start();
+            addresses.add("localhost:" + server.getPort());
+        }
+        return new ShardedBoard(addresses);
+    }
+
+    private static ShardedBoard quarters(boolean[][] bombState) throws IOException {
+        return shard(bombState, new int[][] { { 0, 0, 2, 3 }, { 0, 3, 2, 5 }, { 2, 0, 5, 3 }, { 2, 3, 5, 5 } });
+    }
+
+    @Test
+    public void testCascadeAcrossTiles() throws IOException {
+        Board board = new Board(sparse);
+        ShardedBoard sharded = quarters(sparse);
+        try {
+            assertEquals(board.toString(), sharded.look());
+            assertEquals(board.dig(1, 1), sharded.dig(1, 1));
+        } finally {
+            sharded.close();
+        }
+    }
+
+    @Test
+    public void testBoomAtTileBorder() throws IOException {
+        Board board = new Board(sparse);
+        ShardedBoard sharded = quarters(sparse);
+        try {
+            assertEquals(board.flag(3, 2), sharded.flag(3, 2));
+            board.dig(4, 3);
+            assertSame(boomException.message, sharded.dig(4, 3));
+            assertEquals(board.toString(), sharded.look());
+            assertEquals(board.dig(3, 4), sharded.dig(3, 4));
+            assertEquals(board.deflag(3, 2), sharded.deflag(3, 2));
+            assertEquals(board.dig(3, 2), sharded.dig(3, 2));
+        } finally {
+            sharded.close();
+        }
+    }
+
+    @Test
+    public void testSpillOntoDeflaggedSquare() throws IOException {
+        final boolean[][] empty = new boolean[5][5];
+        Board board = new Board(empty);
+        ShardedBoard sharded = shard(empty, new int[][] { { 0, 0, 1, 5 }, { 1, 0, 5, 5 } });
+        try {
+            for (int x = 0; x < 5; x++) {
+                assertEquals(board.flag(x, 2), sharded.flag(x, 2));
+            }
+            // the cascade reaches (0, 2) while it is flagged
+            assertEquals(board.dig(1, 1), sharded.dig(1, 1));
+            assertEquals(board.deflag(0, 2), sharded.deflag(0, 2));
+            assertEquals(board.flag(0, 3), sharded.flag(0, 3));
+            assertEquals(board.dig(1, 3), sharded.dig(1, 3));
+        } finally {
+            sharded.close();
+        }
+    }
+
+    @Test
+    public void testRandomMoves() throws IOException {
+        final int size = 12;
+        final Random random = new Random(26);
+        boolean[][] bombState = new boolean[size][size];
+        for (int x = 0; x < size; x++) {
+            for (int y = 0; y < size; y++) {
+                bombState[x][y] = random.nextDouble() < 0.15;
+            }
+        }
+        Board board = new Board(bombState);
+        ShardedBoard sharded = shard(bombState, new int[][] { { 0, 0, 5, 7 }, { 0, 7, 5, 12 }, { 5, 0, 12, 4 },
+                { 5, 4, 9, 12 }, { 9, 4, 12, 12 } });
+        try {
+            for (int move = 0; move < 300; move++) {
+                // a few coordinates out of the board, which must be ignored
+                final int x = random.nextInt(size + 1);
+                final int y = random.nextInt(size + 1);
+                switch (random.nextInt(4)) {
+                case 0:
+                    assertEquals(board.dig(x, y), sharded.dig(x, y));
+                    break;
+                case 1:
+                    assertEquals(board.flag(x, y), sharded.flag(x, y));
+                    break;
+                case 2:
+                    assertEquals(board.deflag(x, y), sharded.deflag(x, y));
+                    break;
+                default:
+                    assertEquals(board.look(), sharded.look());
+                }
+            }
+        } finally {
+            sharded.close();
+        }
+    }
+}